@@ -7,6 +7,7 @@ public class AIDebugWindow extends JFrame {
     private final JTextArea textArea;
 
     private static AIDebugWindow instance;
+    private static volatile boolean logging = !GraphicsEnvironment.isHeadless();
 
     public AIDebugWindow() {
         setTitle("Pacman AI Debug");
@@ -23,6 +24,19 @@ public class AIDebugWindow extends JFrame {
         setVisible(true);
     }
 
+    /**
+     * Whether debug output is shown. Controllers should check this before building log
+     * messages, so that nothing is formatted while debugging is off. Enabled by default
+     * unless there is no display.
+     */
+    public static boolean isLogging() {
+        return logging;
+    }
+
+    public static void setLogging(boolean logging) {
+        AIDebugWindow.logging = logging;
+    }
+
     public static AIDebugWindow getInstance() {
         if (instance == null) {
             instance = new AIDebugWindow();
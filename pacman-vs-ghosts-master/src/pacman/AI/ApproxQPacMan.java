@@ -0,0 +1,147 @@
+package pacman.AI;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+import java.util.Scanner;
+
+import pacman.controllers.Controller;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+// Approximate Q-learning PacMan agent: Q(s, a) = w . f(s, a) over the features of
+// PacManFeatures, so similar situations share what is learned and the model has a
+// fixed size instead of a growing table
+public class ApproxQPacMan extends Controller<MOVE> {
+    // Learning parameters
+    private final double alpha = 0.01; // Learning rate (features are in [0, 1])
+    private final double gamma = 0.95; // Discount factor
+    private double epsilon = 0.3; // Exploration rate
+    private final double epsilonDecay = 0.999; // Epsilon decay per step
+    private final double minEpsilon = 0.02; // Minimum exploration
+
+    // Rewards are scaled down so that TD errors stay in the range of the features
+    private final double REWARD_SCALE = 0.01;
+    private final double DEATH_PENALTY = -500.0;
+    private final double STEP_PENALTY = -1.0;
+
+    private final double[] weights = new double[PacManFeatures.COUNT];
+    private final PacManFeatures features = new PacManFeatures();
+    private final double[] lastFeatures = new double[PacManFeatures.COUNT]; // features of the last move made
+    private final Random random = new Random();
+
+    private boolean hasLast;
+    private double lastQ;
+    private int lastScore;
+
+    public ApproxQPacMan() {
+        loadWeights("approxq_weights.csv");
+    }
+
+    @Override
+    public MOVE getMove(Game game, long timeDue) {
+        // One feature computation per tick; every Q-value below is a dot product
+        features.compute(game);
+
+        MOVE bestMove = MOVE.NEUTRAL;
+        double bestQ = Double.NEGATIVE_INFINITY;
+        int legalMoves = 0;
+
+        for (MOVE move : MOVE.values()) {
+            if (!features.isLegal(move))
+                continue;
+            legalMoves++;
+            double q = features.dot(move, weights);
+            if (q > bestQ) {
+                bestQ = q;
+                bestMove = move;
+            }
+        }
+
+        if (legalMoves == 0)
+            return MOVE.NEUTRAL;
+
+        // TD update of the previous move towards r + gamma * max Q(s', a')
+        if (hasLast) {
+            double reward = calculateReward(game);
+            double target = game.wasPacManEaten() ? reward : reward + gamma * bestQ;
+            double delta = target - lastQ;
+
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] += alpha * delta * lastFeatures[i];
+            }
+        }
+
+        // Epsilon-greedy: pick the k-th legal move at random
+        MOVE move = bestMove;
+        if (random.nextDouble() < epsilon) {
+            int k = random.nextInt(legalMoves);
+            for (MOVE m : MOVE.values()) {
+                if (features.isLegal(m) && k-- == 0) {
+                    move = m;
+                    break;
+                }
+            }
+        }
+
+        features.copy(move, lastFeatures);
+        lastQ = features.dot(move, weights);
+        lastScore = game.getScore();
+        hasLast = true;
+
+        epsilon = Math.max(minEpsilon, epsilon * epsilonDecay);
+
+        return move;
+    }
+
+    /**
+     * Reward since the last tick: the score gained (pills, power pills, ghosts), a small
+     * step penalty and a large penalty for losing a life, all scaled by REWARD_SCALE.
+     */
+    private double calculateReward(Game game) {
+        if (game.wasPacManEaten())
+            return DEATH_PENALTY * REWARD_SCALE;
+
+        // a new game restarts the score
+        int gained = game.getScore() >= lastScore ? game.getScore() - lastScore : game.getScore();
+        return (gained + STEP_PENALTY) * REWARD_SCALE;
+    }
+
+    public double[] getWeights() {
+        return weights.clone();
+    }
+
+    /**
+     * Saves the weights to a file (one line per feature: index,weight).
+     */
+    public void saveWeights(String filename) {
+        try (FileWriter writer = new FileWriter(filename)) {
+            for (int i = 0; i < weights.length; i++) {
+                writer.write(i + "," + weights[i] + "\n");
+            }
+            System.out.println("Weights saved.");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads the weights from a file if it exists.
+     */
+    private void loadWeights(String filename) {
+        try (Scanner scanner = new Scanner(new File(filename))) {
+            while (scanner.hasNextLine()) {
+                String[] parts = scanner.nextLine().split(",");
+                if (parts.length == 2) {
+                    int index = Integer.parseInt(parts[0].trim());
+                    if (index >= 0 && index < weights.length)
+                        weights[index] = Double.parseDouble(parts[1].trim());
+                }
+            }
+            System.out.println("Weights loaded.");
+        } catch (IOException e) {
+            System.out.println("No weights found, starting fresh.");
+        }
+    }
+}
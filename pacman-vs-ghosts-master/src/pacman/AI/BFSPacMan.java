@@ -5,7 +5,7 @@ import pacman.game.Constants.MOVE;
 import pacman.game.Game;
 import pacman.game.Constants.GHOST;
 
-import java.util.*;
+import java.util.BitSet;
 
 public class BFSPacMan extends Controller<MOVE> {
 
@@ -15,19 +15,31 @@ public class BFSPacMan extends Controller<MOVE> {
      * Here, BFS is used to find the closest pill for PacMan.
      */
 
+    private static final int UNSAFE_COST = 1000; // extra cost of a node a ghost can reach before Pac-Man
+
+    // reused every tick
+    private final BitSet pillNodes = new BitSet();
+    private final BitSet safePills = new BitSet();
+    private int[] costs = new int[0];
+    private int[] parents = new int[0];
+
     @Override
     public MOVE getMove(Game game, long timeDue) {
         int current = game.getPacmanCurrentNodeIndex();
-        int[] activePills = game.getActivePillsIndices();
+        BitSet activePills = game.getActivePillNodes(pillNodes);
 
-        if (activePills.length == 0) {
+        if (activePills.isEmpty()) {
             return MOVE.NEUTRAL;
         }
 
-        // Ghost avoidance logic
+        // Ghost avoidance logic: head for the closest pill Pac-Man reaches before any ghost, around the
+        // nodes the ghosts reach first, or else for the pill farthest from the ghosts
         int target;
         if (isGhostThreatening(game, 25)) {
-            target = getSafestPill(game, current);
+            safePills.clear();
+            safePills.or(activePills);
+            safePills.and(game.getSafeRegion());
+            target = safePills.isEmpty() ? getSafestPill(game, current) : getClosestSafePillBFS(game, current, safePills);
         } else {
             target = getClosestPillBFS(game, current, activePills); // <-- BFS search is used here to find the closest pill
         }
@@ -44,61 +56,45 @@ public class BFSPacMan extends Controller<MOVE> {
      *
      * @param game   The current game state.
      * @param start  The starting node (PacMan's current position).
-     * @param pills  The indices of active pills.
-     * @return The index of the closest pill, or -1 if no path is found.
+     * @param pills  The nodes of the active pills.
+     * @return The node of the closest pill, or -1 if no path is found.
      */
-    private int getClosestPillBFS(Game game, int start, int[] pills) {
-        Set<Integer> visited = new HashSet<>();
-        Queue<Integer> queue = new LinkedList<>();
-        Map<Integer, Integer> cameFrom = new HashMap<>();
-
-        queue.add(start);
-        visited.add(start);
-
-        while (!queue.isEmpty()) {
-            int current = queue.poll();
-
-            // Check if the current node is a pill
-            if (Arrays.stream(pills).anyMatch(pill -> pill == current)) {
-                List<Integer> path = reconstructPath(cameFrom, current);
-                if (path.size() > 1) {
-                    return path.get(1); // Return the next step towards the pill
-                } else {
-                    return current;
-                }
-            }
-
-            // Explore neighbors
-            for (int neighbor : game.getNeighbouringNodes(current)) {
-                if (!visited.contains(neighbor)) {
-                    visited.add(neighbor);
-                    queue.add(neighbor);
-                    cameFrom.put(neighbor, current);
-                }
-            }
-        }
-
-        // No path found
-        return -1;
+    private int getClosestPillBFS(Game game, int start, BitSet pills) {
+        return game.getNearestNodeInSet(start, pills);
     }
 
     /**
-     * Reconstructs the path from the start to the target using the cameFrom map.
+     * Finds the closest pill in the safe region using Breadth-First Search (BFS), crossing nodes outside the
+     * safe region only if there is no way around them.
      *
-     * @param cameFrom The map of nodes and their predecessors.
-     * @param target   The target node.
-     * @return A list representing the path from start to target.
+     * @param game   The current game state.
+     * @param start  The starting node (PacMan's current position).
+     * @param pills  The nodes of the active pills in the safe region.
+     * @return The next node on the path to the closest safe pill, or -1 if no path is found.
      */
-    private List<Integer> reconstructPath(Map<Integer, Integer> cameFrom, int target) {
-        List<Integer> path = new ArrayList<>();
-        path.add(target);
+    private int getClosestSafePillBFS(Game game, int start, BitSet pills) {
+        int numNodes = game.getNumberOfNodes();
+        if (costs.length < numNodes) {
+            costs = new int[numNodes];
+            parents = new int[numNodes];
+        }
 
-        while (cameFrom.containsKey(target)) {
-            target = cameFrom.get(target);
-            path.add(0, target);
+        BitSet safe = game.getSafeRegion();
+        for (int node = 0; node < numNodes; node++) {
+            costs[node] = safe.get(node) ? 0 : UNSAFE_COST;
         }
 
-        return path;
+        int pill = game.getNearestNodeInSet(start, pills, costs, parents);
+        if (pill == -1) {
+            return -1;
+        }
+
+        // Follow the path back to the first step
+        int step = pill;
+        while (parents[step] != -1 && parents[step] != start) {
+            step = parents[step];
+        }
+        return step;
     }
 
     // Ghost logic helpers
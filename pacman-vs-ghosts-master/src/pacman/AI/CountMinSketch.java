@@ -0,0 +1,62 @@
+package pacman.AI;
+
+/**
+ * Count-min sketch: approximate counts of long keys in constant memory. Each key is
+ * counted in one cell of each of DEPTH rows, chosen by independent hashes; the estimate
+ * is the smallest of those cells. Estimates never undercount, and overcount by at most
+ * a fraction of the total count with high probability, however many distinct keys
+ * there are. Used for visit counts of RL states that are never stored explicitly.
+ */
+public class CountMinSketch {
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = { 0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L,
+            0xD6E8FEB86659FD93L };
+
+    private final int[] counts; // counts[row * width + column]
+    private final int width;
+    private final int mask;
+
+    /**
+     * @param width The number of counters per row (rounded up to a power of 2)
+     */
+    public CountMinSketch(int width) {
+        this.width = Math.max(16, Integer.highestOneBit(Math.max(1, width - 1)) << 1);
+        this.mask = this.width - 1;
+        this.counts = new int[DEPTH * this.width];
+    }
+
+    /**
+     * Counts one occurrence of the key (conservative update: only the cells holding the
+     * current minimum are incremented, which reduces overcounting). Counts saturate.
+     */
+    public void add(long key) {
+        int min = estimate(key);
+        if (min == Integer.MAX_VALUE)
+            return;
+
+        for (int row = 0; row < DEPTH; row++) {
+            int cell = row * width + column(key, row);
+            if (counts[cell] == min)
+                counts[cell] = min + 1;
+        }
+    }
+
+    /**
+     * Returns the estimated number of occurrences of the key (0 if it was never added).
+     */
+    public int estimate(long key) {
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, counts[row * width + column(key, row)]);
+        }
+        return min;
+    }
+
+    private int column(long key, int row) {
+        long h = (key ^ SEEDS[row]) * 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+}
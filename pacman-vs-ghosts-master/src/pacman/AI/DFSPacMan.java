@@ -15,6 +15,8 @@ public class DFSPacMan extends Controller<MOVE> {
      * Here, DFS is used to find a pill for PacMan.
      */
 
+    private final BitSet pillNodes = new BitSet(); // reused every tick
+
     @Override
     public MOVE getMove(Game game, long timeDue) {
         int current = game.getPacmanCurrentNodeIndex();
@@ -29,7 +31,7 @@ public class DFSPacMan extends Controller<MOVE> {
         if (isGhostThreatening(game, 25)) {
             target = getSafestPill(game, current);
         } else {
-            target = getClosestPillDFS(game, current, activePills); // <-- DFS search is used here to find the closest pill
+            target = getClosestPillDFS(game, current, game.getActivePillNodes(pillNodes)); // <-- DFS search is used here to find the closest pill
         }
 
         if (target == -1) {
@@ -44,10 +46,10 @@ public class DFSPacMan extends Controller<MOVE> {
      *
      * @param game   The current game state.
      * @param start  The starting node (PacMan's current position).
-     * @param pills  The indices of active pills.
+     * @param pills  The nodes of the active pills.
      * @return The index of the closest pill, or -1 if no path is found.
      */
-    private int getClosestPillDFS(Game game, int start, int[] pills) {
+    private int getClosestPillDFS(Game game, int start, BitSet pills) {
         Set<Integer> visited = new HashSet<>();
         Stack<Integer> stack = new Stack<>();
         Map<Integer, Integer> cameFrom = new HashMap<>();
@@ -59,7 +61,7 @@ public class DFSPacMan extends Controller<MOVE> {
             int current = stack.pop();
 
             // Check if the current node is a pill
-            if (Arrays.stream(pills).anyMatch(pill -> pill == current)) {
+            if (pills.get(current)) {
                 return reconstructPath(cameFrom, current).get(1); // Return the next step towards the pill
             }
 
@@ -0,0 +1,233 @@
+package pacman.AI;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import pacman.controllers.Controller;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+// Deep Q-network PacMan agent: an MLP maps the features of all four moves (see
+// PacManFeatures) plus their legality to one Q-value per move. Trained with experience
+// replay, minibatches and a target network, on the CPU
+public class DQNPacMan extends Controller<MOVE> {
+    private static final int ACTIONS = 4; // UP, RIGHT, DOWN, LEFT (the MOVE ordinals 0..3)
+    private static final int LEGAL = ACTIONS * PacManFeatures.COUNT; // offset of the legality flags
+    private static final int INPUTS = LEGAL + ACTIONS;
+    private static final int HIDDEN = 64;
+    private static final MOVE[] MOVES = MOVE.values();
+
+    // Learning parameters
+    private final double gamma = 0.95; // Discount factor
+    private final float learningRate = 5e-4f;
+    private double epsilon = 1.0; // Exploration rate
+    private final double epsilonDecay = 0.9995; // Epsilon decay per step
+    private final double minEpsilon = 0.05; // Minimum exploration
+    private final int batchSize = 32;
+    private final int trainEvery = 4; // ticks between minibatches
+    private final int targetSync = 2000; // ticks between copies to the target network
+    private final int minReplay = 1000; // transitions stored before training starts
+
+    // Rewards (scaled like ApproxQPacMan)
+    private final double REWARD_SCALE = 0.01;
+    private final double DEATH_PENALTY = -500.0;
+    private final double STEP_PENALTY = -1.0;
+
+    private final MLP online = new MLP(1, INPUTS, HIDDEN, HIDDEN, ACTIONS);
+    private final MLP target = new MLP(1, INPUTS, HIDDEN, HIDDEN, ACTIONS);
+    private final PacManFeatures features = new PacManFeatures();
+    private final Random random = new Random();
+
+    // Replay memory in flat arrays: states[i * INPUTS ..] etc.
+    private final int replayCapacity = 50000;
+    private final float[] replayStates = new float[replayCapacity * INPUTS];
+    private final float[] replayNext = new float[replayCapacity * INPUTS];
+    private final byte[] replayActions = new byte[replayCapacity];
+    private final float[] replayRewards = new float[replayCapacity];
+    private final boolean[] replayDone = new boolean[replayCapacity];
+    private int replayNextSlot, replaySize;
+
+    // Reusable buffers
+    private float[] state = new float[INPUTS];
+    private float[] lastState = new float[INPUTS];
+    private final float[] sample = new float[INPUTS];
+    private final float[] outputGradient = new float[ACTIONS];
+
+    private boolean hasLast;
+    private int lastAction;
+    private int lastScore;
+    private long steps;
+
+    public DQNPacMan() {
+        loadNetwork("dqn_weights.bin");
+        target.copyFrom(online);
+    }
+
+    @Override
+    public MOVE getMove(Game game, long timeDue) {
+        encodeState(game, state);
+
+        if (state[LEGAL] + state[LEGAL + 1] + state[LEGAL + 2] + state[LEGAL + 3] == 0f)
+            return MOVE.NEUTRAL;
+
+        int action = random.nextDouble() < epsilon ? randomLegal(state) : bestLegal(online.forward(state), state);
+
+        if (hasLast) {
+            storeTransition(lastState, lastAction, calculateReward(game), state, game.wasPacManEaten());
+
+            if (replaySize >= minReplay && steps % trainEvery == 0)
+                trainMinibatch();
+            if (steps % targetSync == 0)
+                target.copyFrom(online);
+        }
+
+        // swap the buffers instead of copying
+        float[] tmp = lastState;
+        lastState = state;
+        state = tmp;
+
+        lastAction = action;
+        lastScore = game.getScore();
+        hasLast = true;
+        steps++;
+
+        epsilon = Math.max(minEpsilon, epsilon * epsilonDecay);
+
+        return MOVES[action];
+    }
+
+    /**
+     * Encodes the features of the four moves and their legality into the input vector.
+     */
+    private void encodeState(Game game, float[] input) {
+        features.compute(game);
+
+        for (int a = 0; a < ACTIONS; a++) {
+            MOVE move = MOVES[a];
+            boolean legal = features.isLegal(move);
+
+            for (int f = 0; f < PacManFeatures.COUNT; f++) {
+                input[a * PacManFeatures.COUNT + f] = legal ? (float) features.get(move, f) : 0f;
+            }
+            input[LEGAL + a] = legal ? 1f : 0f;
+        }
+    }
+
+    private static int bestLegal(float[] q, float[] input) {
+        int best = -1;
+        for (int a = 0; a < ACTIONS; a++) {
+            if (input[LEGAL + a] != 0f && (best < 0 || q[a] > q[best]))
+                best = a;
+        }
+        return best;
+    }
+
+    private int randomLegal(float[] input) {
+        int legal = 0;
+        for (int a = 0; a < ACTIONS; a++) {
+            if (input[LEGAL + a] != 0f)
+                legal++;
+        }
+
+        int k = random.nextInt(legal);
+        for (int a = 0; a < ACTIONS; a++) {
+            if (input[LEGAL + a] != 0f && k-- == 0)
+                return a;
+        }
+        return 0;
+    }
+
+    private void storeTransition(float[] from, int action, double reward, float[] to, boolean done) {
+        int slot = replayNextSlot;
+        System.arraycopy(from, 0, replayStates, slot * INPUTS, INPUTS);
+        System.arraycopy(to, 0, replayNext, slot * INPUTS, INPUTS);
+        replayActions[slot] = (byte) action;
+        replayRewards[slot] = (float) reward;
+        replayDone[slot] = done;
+
+        replayNextSlot = (slot + 1) % replayCapacity;
+        replaySize = Math.min(replaySize + 1, replayCapacity);
+    }
+
+    /**
+     * One minibatch of Q-learning against the target network, with the Huber loss
+     * (TD errors clipped to [-1, 1]).
+     */
+    private void trainMinibatch() {
+        for (int b = 0; b < batchSize; b++) {
+            int slot = random.nextInt(replaySize);
+            int action = replayActions[slot];
+            double y = replayRewards[slot];
+
+            if (!replayDone[slot]) {
+                System.arraycopy(replayNext, slot * INPUTS, sample, 0, INPUTS);
+                float[] next = target.forward(sample);
+                int best = bestLegal(next, sample);
+                if (best >= 0)
+                    y += gamma * next[best];
+            }
+
+            System.arraycopy(replayStates, slot * INPUTS, sample, 0, INPUTS);
+            float[] q = online.forward(sample);
+
+            for (int a = 0; a < ACTIONS; a++) {
+                outputGradient[a] = 0f;
+            }
+            outputGradient[action] = (float) Math.max(-1.0, Math.min(1.0, q[action] - y));
+
+            online.backward(outputGradient);
+        }
+
+        online.step(learningRate, batchSize);
+    }
+
+    private double calculateReward(Game game) {
+        if (game.wasPacManEaten())
+            return DEATH_PENALTY * REWARD_SCALE;
+
+        // a new game restarts the score
+        int gained = game.getScore() >= lastScore ? game.getScore() - lastScore : game.getScore();
+        return (gained + STEP_PENALTY) * REWARD_SCALE;
+    }
+
+    /**
+     * Saves the parameters of the online network.
+     */
+    public void saveNetwork(String filename) {
+        float[] params = online.getParameters();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(params.length);
+            for (float p : params) {
+                out.writeFloat(p);
+            }
+            System.out.println("Network saved.");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads the parameters of the online network from a file if it exists and matches the layout.
+     */
+    private void loadNetwork(String filename) {
+        float[] params = online.getParameters();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            if (in.readInt() != params.length) {
+                System.out.println("Network file does not match the layout, starting fresh.");
+                return;
+            }
+            for (int i = 0; i < params.length; i++) {
+                params[i] = in.readFloat();
+            }
+            System.out.println("Network loaded.");
+        } catch (IOException e) {
+            System.out.println("No network found, starting fresh.");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package pacman.AI;
+
+import java.util.Random;
+
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+// Dyna-Q PacMan agent: learns from real transitions like RLPacManV2, and in addition
+// uses the game itself as a model. After every real step it simulates transitions from
+// recently visited states (Game.copy() + advanceGame) and applies the same Q-learning
+// update to them, for as long as the time budget of the tick allows
+public class DynaQPacMan extends RLPacManV2 {
+    private static final int MEMORY = 64; // recently visited states kept for planning
+    private static final int REMEMBER_EVERY = 4; // ticks between two remembered states
+    private static final int ROLLOUT_DEPTH = 4; // simulated steps per planning rollout
+    private static final double BUDGET_FRACTION = 0.5; // share of the remaining tick time used for planning
+    private static final long SAFETY_MS = 5; // time left untouched before the deadline
+    private static final int MAX_STEPS = 1000; // simulated steps per tick, at most
+    private static final int STEPS_WITHOUT_DEADLINE = 20; // simulated steps per tick if there is no deadline
+
+    private final Game[] memory = new Game[MEMORY];
+    private int remembered, nextMemory, ticks;
+
+    private final Random planningRandom = new Random();
+    private final GhostModel ghostModel = new GhostModel(0.0, planningRandom); // chase, or flee while edible
+    private long simulatedSteps;
+
+    @Override
+    public MOVE getMove(Game game, long timeDue) {
+        MOVE move = super.getMove(game, timeDue);
+
+        if (ticks++ % REMEMBER_EVERY == 0) {
+            memory[nextMemory] = game.copy();
+            nextMemory = (nextMemory + 1) % MEMORY;
+            remembered = Math.min(remembered + 1, MEMORY);
+        }
+
+        plan(timeDue);
+        return move;
+    }
+
+    /**
+     * Runs simulated rollouts until the planning budget of this tick is used up: half of
+     * the time remaining until the deadline (minus a safety margin), or a fixed number of
+     * steps if the game does not impose a deadline.
+     */
+    private void plan(long timeDue) {
+        if (remembered == 0)
+            return;
+
+        long planUntil;
+        int maxSteps;
+
+        if (timeDue > 0) {
+            long now = System.currentTimeMillis();
+            planUntil = now + (long) ((timeDue - SAFETY_MS - now) * BUDGET_FRACTION);
+            maxSteps = MAX_STEPS;
+        } else {
+            planUntil = Long.MAX_VALUE;
+            maxSteps = STEPS_WITHOUT_DEADLINE;
+        }
+
+        int steps = 0;
+        while (steps < maxSteps && System.currentTimeMillis() < planUntil) {
+            steps += rollout(memory[planningRandom.nextInt(remembered)]);
+        }
+        simulatedSteps += steps;
+    }
+
+    /**
+     * Simulates a few steps with random legal Pac-Man moves from a remembered state,
+     * updating the Q-table with every simulated transition, rewarded like a real one.
+     *
+     * @return the number of steps simulated
+     */
+    private int rollout(Game start) {
+        Game game = start.copy();
+        long state = encodeState(game);
+        MOVE move = randomMove(game);
+        int steps = 0;
+
+        while (steps < ROLLOUT_DEPTH && move != MOVE.NEUTRAL && !game.gameOver()) {
+            int fromNode = game.getPacmanCurrentNodeIndex();
+            game.advanceGame(move, ghostModel.getMoves(game));
+            steps++;
+
+            // the next move is picked first, as the reward depends on it (like a real step)
+            long nextState = encodeState(game);
+            MOVE nextMove = randomMove(game);
+            updateQTable(state, move, transitionReward(game, move, state, nextState, fromNode, nextMove), nextState);
+
+            if (game.wasPacManEaten())
+                break;
+            state = nextState;
+            move = nextMove;
+        }
+        return steps;
+    }
+
+    // A random legal Pac-Man move, or NEUTRAL if there is none
+    private MOVE randomMove(Game game) {
+        MOVE[] moves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex(), game.getPacmanLastMoveMade());
+        return moves.length == 0 ? MOVE.NEUTRAL : moves[planningRandom.nextInt(moves.length)];
+    }
+
+    /**
+     * The number of simulated transitions used for planning so far.
+     */
+    public long getSimulatedSteps() {
+        return simulatedSteps;
+    }
+}
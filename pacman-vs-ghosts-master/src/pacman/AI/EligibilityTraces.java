@@ -0,0 +1,104 @@
+package pacman.AI;
+
+import pacman.game.Constants.MOVE;
+
+/**
+ * Sparse eligibility traces for Q(lambda): only the state-move pairs with a trace above
+ * a threshold are stored, in a small bounded array. Since traces decay geometrically,
+ * only the last few dozen visited pairs are ever active, so an update touches those
+ * instead of the whole Q-table. When the array is full, the weakest trace is dropped.
+ */
+public class EligibilityTraces {
+    private static final MOVE[] MOVES = MOVE.values();
+
+    private final long[] states;
+    private final byte[] moves;
+    private final double[] traces;
+    private final double threshold;
+    private int size;
+
+    /**
+     * @param capacity The maximum number of active traces
+     * @param threshold Traces that decay below this value are removed
+     */
+    public EligibilityTraces(int capacity, double threshold) {
+        this.states = new long[capacity];
+        this.moves = new byte[capacity];
+        this.traces = new double[capacity];
+        this.threshold = threshold;
+    }
+
+    /**
+     * Sets the trace of a visited pair to 1 (replacing traces).
+     */
+    public void visit(long state, MOVE move) {
+        int index = indexOf(state, move);
+
+        if (index < 0) {
+            if (size < states.length) {
+                index = size++;
+            } else {
+                index = weakest();
+            }
+            states[index] = state;
+            moves[index] = (byte) move.ordinal();
+        }
+        traces[index] = 1.0;
+    }
+
+    /**
+     * Multiplies all traces by the factor and removes those that fall below the threshold.
+     */
+    public void decay(double factor) {
+        for (int i = size - 1; i >= 0; i--) {
+            traces[i] *= factor;
+            if (traces[i] < threshold)
+                removeAt(i);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long state(int index) {
+        return states[index];
+    }
+
+    public MOVE move(int index) {
+        return MOVES[moves[index]];
+    }
+
+    public double trace(int index) {
+        return traces[index];
+    }
+
+    private int indexOf(long state, MOVE move) {
+        for (int i = 0; i < size; i++) {
+            if (states[i] == state && moves[i] == move.ordinal())
+                return i;
+        }
+        return -1;
+    }
+
+    private int weakest() {
+        int weakest = 0;
+        for (int i = 1; i < size; i++) {
+            if (traces[i] < traces[weakest])
+                weakest = i;
+        }
+        return weakest;
+    }
+
+    // swap-remove: the order of the traces does not matter
+    private void removeAt(int index) {
+        size--;
+        states[index] = states[size];
+        moves[index] = moves[size];
+        traces[index] = traces[size];
+    }
+}
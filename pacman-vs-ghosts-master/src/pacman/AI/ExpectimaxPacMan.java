@@ -0,0 +1,254 @@
+package pacman.AI;
+
+import java.util.Random;
+
+import pacman.controllers.Controller;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * Iterative-deepening expectimax PacMan controller.
+ *
+ * The search is over junction decisions: a Pac-Man move is followed along the corridor
+ * until the next junction (as in MCTSPacMan), so depth d means d decisions ahead. After
+ * each decision a chance node weighs two ghost behaviours of a GhostModel: chasing
+ * Pac-Man (CHASE_PROBABILITY) and moving at random. Leaves are valued by the points
+ * gained, how close Pac-Man is to a pill and how close it is to dangerous ghosts; dying
+ * is worth DEATH_VALUE.
+ *
+ * The search deepens one level at a time until the time left before timeDue runs out.
+ * The move of the deepest completed level is kept (and published), and a level that
+ * runs out of time is abandoned, so the quality of the move scales with the CPU time
+ * available. The search uses one pre-allocated Game per level (see Game.copyInto()).
+ *
+ * The value of the state after each decision and ghost behaviour is cached in a
+ * TranspositionTable (keyed by Game.getStateHash()), so states reached again through
+ * other decision orders, reversals in corridors or the next level of deepening are not
+ * searched again. The cached value leaves out the points gained on the way there, which
+ * makes it reusable across moves as well. The table is private to the controller, which
+ * starts a new table generation on every move.
+ * For a cached value to be exact rather than one noisy sample, the random moves of the
+ * wandering ghosts are drawn from a generator seeded with the state and the decision, so
+ * the outcome of a decision in a state is always the same.
+ */
+public class ExpectimaxPacMan extends Controller<MOVE> {
+    private static final int MAX_DEPTH = 16;
+    private static final int DEPTH_WITHOUT_DEADLINE = 3;
+    private static final int MAX_MACRO_STEPS = 40; // time steps per decision, at most
+    private static final long SAFETY_MILLIS = 2;
+
+    private static final double CHASE_PROBABILITY = 0.8;
+    private static final double DEATH_VALUE = -5000;
+    private static final double PILL_WEIGHT = 10; // value of standing on a pill, decreasing to 0 at PILL_RANGE
+    private static final int PILL_RANGE = 100;
+    private static final double DANGER_WEIGHT = 20; // per node a non-edible ghost is closer than DANGER_DISTANCE
+    private static final int DANGER_DISTANCE = 10;
+
+    private static final int TABLE_SIZE_LOG2 = 16;
+    private static final GHOST[] GHOSTS = GHOST.values();
+
+    private final TranspositionTable table = new TranspositionTable(TABLE_SIZE_LOG2); // owned: aged on every move
+    private final Random random = new Random();
+    private final GhostModel chasing = new GhostModel(0.0, random);
+    private final GhostModel wandering = new GhostModel(1.0, random);
+    private final Game[] stack = new Game[MAX_DEPTH];
+
+    private long deadline;
+    private boolean aborted;
+    private int rootScore;
+
+    private int lastDepth;
+    private long totalDepth, searches;
+    private long probes, hits;
+
+    @Override
+    public MOVE getMove(Game game, long timeDue) {
+        deadline = timeDue > 0 ? System.nanoTime() + (timeDue - SAFETY_MILLIS - System.currentTimeMillis()) * 1_000_000L
+                : Long.MAX_VALUE;
+        int maxDepth = timeDue > 0 ? MAX_DEPTH : DEPTH_WITHOUT_DEADLINE;
+        aborted = false;
+        rootScore = game.getScore();
+        table.newSearch();
+
+        MOVE[] moves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex());
+        MOVE best = fallbackMove(game);
+        int completed = 0;
+
+        for (int depth = 1; depth <= maxDepth && moves.length > 1; depth++) {
+            MOVE bestAtDepth = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+
+            for (MOVE move : moves) {
+                double value = chanceValue(game, move, 0, depth);
+                if (aborted)
+                    break;
+                if (value > bestValue) {
+                    bestValue = value;
+                    bestAtDepth = move;
+                }
+            }
+
+            if (aborted)
+                break;
+
+            best = bestAtDepth;
+            completed = depth;
+            publish(best);
+        }
+
+        if (moves.length == 1)
+            best = moves[0];
+
+        lastDepth = completed;
+        totalDepth += completed;
+        searches++;
+        return best;
+    }
+
+    private double maxValue(Game game, int ply, int depth) {
+        if (depth == 0 || game.gameOver())
+            return evaluate(game);
+
+        MOVE[] moves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex());
+        if (moves.length == 0)
+            return evaluate(game);
+
+        double best = Double.NEGATIVE_INFINITY;
+        for (MOVE move : moves) {
+            best = Math.max(best, chanceValue(game, move, ply, depth));
+            if (aborted)
+                break;
+        }
+        return best;
+    }
+
+    // Expected value of a decision over the ghost behaviours
+    private double chanceValue(Game game, MOVE move, int ply, int depth) {
+        double chase = outcome(game, move, chasing, ply, depth);
+        if (aborted)
+            return 0;
+        double wander = outcome(game, move, wandering, ply, depth);
+        return CHASE_PROBABILITY * chase + (1 - CHASE_PROBABILITY) * wander;
+    }
+
+    private double outcome(Game game, MOVE move, GhostModel ghosts, int ply, int depth) {
+        Game next = copyToPly(game, ply);
+        int level = next.getCurrentLevel();
+        if (ghosts == wandering)
+            random.setSeed(next.getStateHash() * 31 + move.ordinal()); // see the class comment
+        boolean died = playMacro(next, move, ghosts);
+
+        if (System.nanoTime() > deadline) {
+            aborted = true;
+            return 0;
+        }
+
+        if (died)
+            return DEATH_VALUE + next.getScore() - rootScore;
+        if (next.getCurrentLevel() != level)
+            return evaluate(next);
+
+        // The table holds the value without the points gained so far
+        int gained = next.getScore() - rootScore;
+        long key = next.getStateHash();
+        long entry = table.probe(key);
+        probes++;
+        if (entry != TranspositionTable.MISS && TranspositionTable.depth(entry) >= depth - 1) {
+            hits++;
+            return gained + TranspositionTable.value(entry);
+        }
+
+        double value = maxValue(next, ply + 1, depth - 1);
+        if (!aborted)
+            table.store(key, depth - 1, value - gained, -1);
+        return value;
+    }
+
+    /**
+     * Makes the move and follows the corridor until Pac-Man reaches a junction, dies or
+     * the level ends.
+     *
+     * @return whether Pac-Man died
+     */
+    private static boolean playMacro(Game game, MOVE move, GhostModel ghosts) {
+        int level = game.getCurrentLevel();
+
+        for (int step = 0; step < MAX_MACRO_STEPS; step++) {
+            game.advanceGame(move, ghosts.getMoves(game));
+
+            if (game.wasPacManEaten())
+                return true;
+            if (game.gameOver() || game.getCurrentLevel() != level)
+                return false;
+
+            int current = game.getPacmanCurrentNodeIndex();
+            if (game.isJunction(current))
+                return false;
+
+            MOVE[] corridor = game.getPossibleMoves(current, game.getPacmanLastMoveMade());
+            if (corridor.length > 0)
+                move = corridor[0];
+        }
+        return false;
+    }
+
+    private double evaluate(Game game) {
+        int pacman = game.getPacmanCurrentNodeIndex();
+        double value = game.getScore() - rootScore;
+
+        int nearest = Integer.MAX_VALUE;
+        int[] pills = game.getPillIndices();
+        for (int i = 0; i < pills.length; i++) {
+            if (game.isPillStillAvailable(i))
+                nearest = Math.min(nearest, game.getShortestPathDistance(pacman, pills[i]));
+        }
+        if (nearest < PILL_RANGE)
+            value += PILL_WEIGHT * (1.0 - nearest / (double) PILL_RANGE);
+
+        for (GHOST ghost : GHOSTS) {
+            if (game.getGhostLairTime(ghost) > 0 || game.isGhostEdible(ghost))
+                continue;
+            int distance = game.getShortestPathDistance(game.getGhostCurrentNodeIndex(ghost), pacman);
+            if (distance < DANGER_DISTANCE)
+                value -= DANGER_WEIGHT * (DANGER_DISTANCE - distance);
+        }
+        return value;
+    }
+
+    // Copies the game into the pre-allocated game of the ply (allocated on first use only)
+    private Game copyToPly(Game game, int ply) {
+        if (stack[ply] == null)
+            stack[ply] = game.copy();
+        else
+            game.copyInto(stack[ply]);
+        return stack[ply];
+    }
+
+    // Played if not even depth 1 completes: keep going, or take any legal move
+    private static MOVE fallbackMove(Game game) {
+        MOVE[] moves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex(), game.getPacmanLastMoveMade());
+        return moves.length > 0 ? moves[0] : MOVE.NEUTRAL;
+    }
+
+    /**
+     * The depth of the last completed level of the last search (0 if none completed).
+     */
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    /**
+     * The average completed depth over all searches since the controller was created.
+     */
+    public double getAverageDepth() {
+        return searches == 0 ? 0 : totalDepth / (double) searches;
+    }
+
+    /**
+     * The fraction of transposition table probes that found a deep enough entry.
+     */
+    public double getTableHitRate() {
+        return probes == 0 ? 0 : hits / (double) probes;
+    }
+}
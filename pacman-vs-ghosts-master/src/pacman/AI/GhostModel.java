@@ -0,0 +1,62 @@
+package pacman.AI;
+
+import java.util.EnumMap;
+import java.util.Random;
+
+import pacman.game.Constants.DM;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * A simple model of the ghosts for simulations with the Game forward model (planning,
+ * tree search). Ghosts that have to decide chase Pac-Man along the shortest path, or
+ * flee from it while edible; with a given probability they make a random move instead.
+ * Ghosts never reverse, as in the real game. The map of moves is reused between calls,
+ * so a model must not be shared between threads.
+ */
+public class GhostModel {
+    private static final GHOST[] GHOSTS = GHOST.values();
+
+    private final EnumMap<GHOST, MOVE> moves = new EnumMap<>(GHOST.class);
+    private final double randomness;
+    private final Random random;
+
+    /**
+     * @param randomness The probability of a random move at each decision (0 for the pure heuristic)
+     * @param random The random number generator used for the random moves
+     */
+    public GhostModel(double randomness, Random random) {
+        this.randomness = randomness;
+        this.random = random;
+    }
+
+    /**
+     * Returns the moves of all ghosts for the next time step. The returned map is reused by the next call.
+     */
+    public EnumMap<GHOST, MOVE> getMoves(Game game) {
+        for (GHOST ghost : GHOSTS) {
+            moves.put(ghost, game.doesGhostRequireAction(ghost) ? getMove(game, ghost) : MOVE.NEUTRAL);
+        }
+        return moves;
+    }
+
+    /**
+     * Returns the move of a ghost that has to decide (at a junction).
+     */
+    public MOVE getMove(Game game, GHOST ghost) {
+        int node = game.getGhostCurrentNodeIndex(ghost);
+        MOVE last = game.getGhostLastMoveMade(ghost);
+
+        if (randomness > 0 && random.nextDouble() < randomness) {
+            MOVE[] possible = game.getPossibleMoves(node, last);
+            if (possible.length > 0)
+                return possible[random.nextInt(possible.length)];
+        }
+
+        int pacman = game.getPacmanCurrentNodeIndex();
+        return game.isGhostEdible(ghost)
+                ? game.getApproximateNextMoveAwayFromTarget(node, pacman, last, DM.PATH)
+                : game.getApproximateNextMoveTowardsTarget(node, pacman, last, DM.PATH);
+    }
+}
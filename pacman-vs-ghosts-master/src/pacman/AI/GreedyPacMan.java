@@ -15,6 +15,8 @@ public class GreedyPacMan extends Controller<MOVE> {
      * This approach is fast but can miss optimal paths. Here, Greedy is used to find the closest pill for PacMan.
      */
 
+    private final BitSet pillNodes = new BitSet(); // reused every tick
+
     @Override
     public MOVE getMove(Game game, long timeDue) {
         int current = game.getPacmanCurrentNodeIndex();
@@ -29,7 +31,7 @@ public class GreedyPacMan extends Controller<MOVE> {
         if (isGhostThreatening(game, 25)) {
             target = getSafestPill(game, current);
         } else {
-            target = getClosestPillGreedy(game, current, activePills); // <-- Greedy search is used here to find the closest pill
+            target = getClosestPillGreedy(game, current, activePills, game.getActivePillNodes(pillNodes)); // <-- Greedy search is used here to find the closest pill
         }
 
         if (target == -1) {
@@ -45,9 +47,10 @@ public class GreedyPacMan extends Controller<MOVE> {
      * @param game   The current game state.
      * @param start  The starting node (PacMan's current position).
      * @param pills  The indices of active pills.
+     * @param pillNodes The nodes of the active pills, for constant-time goal tests.
      * @return The index of the closest pill, or -1 if no path is found.
      */
-    private int getClosestPillGreedy(Game game, int start, int[] pills) {
+    private int getClosestPillGreedy(Game game, int start, int[] pills, BitSet pillNodes) {
         Set<Integer> visited = new HashSet<>();
         PriorityQueue<Node> queue = new PriorityQueue<>(Comparator.comparingInt(n -> n.heuristic));
         Map<Integer, Integer> cameFrom = new HashMap<>();
@@ -60,7 +63,7 @@ public class GreedyPacMan extends Controller<MOVE> {
             int current = currentNode.index;
 
             // Check if the current node is a pill
-            if (Arrays.stream(pills).anyMatch(pill -> pill == current)) {
+            if (pillNodes.get(current)) {
                 List<Integer> path = reconstructPath(cameFrom, current);
                 if (path.size() > 1) {
                     return path.get(1); // Return the next step towards the pill
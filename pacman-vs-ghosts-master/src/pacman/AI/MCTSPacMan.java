@@ -0,0 +1,500 @@
+package pacman.AI;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import pacman.controllers.Controller;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * Monte Carlo Tree Search PacMan controller.
+ *
+ * The tree searches over macro-actions: a move at a node, followed along the corridor
+ * until the next junction, so one level of the tree is one decision of Pac-Man rather
+ * than one time step. Each simulation copies the current game, descends the tree with
+ * UCT, expands one node, plays a few random macro-actions and backs up the outcome
+ * (0 if Pac-Man died, otherwise between 0.5 and 1, see evaluate()).
+ * Ghosts are simulated with a GhostModel.
+ *
+ * The search stops SAFETY_MILLIS before timeDue (or after a fixed number of simulations
+ * if there is no deadline) and publishes its best move as it goes. The subtree of the
+ * move played is kept for the next tick while Pac-Man follows it. Simulations per second
+ * are reported by getSimulationsPerSecond().
+ *
+ * The search can run on several threads, each with its own Game copies and ghost model:
+ * - ROOT: every thread grows its own tree; the moves are chosen by the visit counts
+ *   summed over the roots.
+ * - TREE: all threads grow one tree. Node statistics are updated lock-free (CAS) and a
+ *   virtual loss is added along the path of a running simulation, so that concurrent
+ *   simulations spread over different branches.
+ */
+public class MCTSPacMan extends Controller<MOVE> {
+    public enum Parallelism {
+        NONE, ROOT, TREE
+    }
+
+    private static final double EXPLORATION = 0.7; // UCT constant
+    private static final int MAX_MACRO_STEPS = 40; // time steps per macro-action, at most
+    private static final int MAX_TREE_DEPTH = 32;
+    private static final int HORIZON = 150; // time steps per simulation, at most (bounds its duration)
+    private static final int ROLLOUT_MACROS = 3; // random macro-actions after leaving the tree
+    private static final double REUSE_DECAY = 0.5; // weight of the statistics kept from the last tick
+    private static final double VIRTUAL_LOSS = 1.0; // visits (of value 0) added while a simulation runs
+    private static final long SAFETY_MILLIS = 2;
+    private static final int SIMULATIONS_WITHOUT_DEADLINE = 400;
+    private static final int PUBLISH_EVERY = 64; // simulations between anytime moves
+    private static final int PILL_RANGE = 100; // distance at which a pill no longer adds to the value
+
+    private static final MOVE[] MOVES = MOVE.values();
+
+    // Runs searchers 1..n-1 of every instance; searcher 0 runs on the calling thread. The pool is
+    // shared and lets idle workers expire, so instances that are dropped (e.g. in an experiment
+    // loop) do not leave threads behind.
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "mcts-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Parallelism parallelism;
+    private final Searcher[] searchers;
+
+    private Node root; // shared root (NONE and TREE)
+    private MOVE playedMove;
+    private int rootLevel = -1;
+
+    private long totalSimulations, totalSearchNanos;
+    private int lastSimulations;
+
+    public MCTSPacMan() {
+        this(Parallelism.NONE, 1);
+    }
+
+    /**
+     * @param parallelism How the search is spread over threads
+     * @param threads The number of search threads (including the calling thread)
+     */
+    public MCTSPacMan(Parallelism parallelism, int threads) {
+        this.parallelism = threads > 1 ? parallelism : Parallelism.NONE;
+        int count = this.parallelism == Parallelism.NONE ? 1 : threads;
+
+        searchers = new Searcher[count];
+        for (int i = 0; i < count; i++) {
+            searchers[i] = new Searcher(new Random());
+        }
+    }
+
+    @Override
+    public MOVE getMove(Game game, long timeDue) {
+        long start = System.nanoTime();
+        long deadline = timeDue > 0 ? start + (timeDue - SAFETY_MILLIS - System.currentTimeMillis()) * 1_000_000L
+                : Long.MAX_VALUE;
+        int limit = timeDue > 0 ? Integer.MAX_VALUE : SIMULATIONS_WITHOUT_DEADLINE / searchers.length;
+
+        if (parallelism == Parallelism.ROOT) {
+            for (Searcher searcher : searchers) {
+                searcher.root = reuseTree(searcher.root, game);
+            }
+        } else {
+            root = reuseTree(root, game);
+            for (Searcher searcher : searchers) {
+                searcher.root = root;
+            }
+        }
+        rootLevel = game.getCurrentLevel();
+
+        int simulations;
+        if (searchers.length == 1) {
+            simulations = searchers[0].search(game, deadline, limit, true);
+        } else {
+            simulations = searchInParallel(game, deadline, limit);
+        }
+
+        lastSimulations = simulations;
+        totalSimulations += simulations;
+        totalSearchNanos += System.nanoTime() - start;
+
+        playedMove = bestMove(game);
+        return playedMove;
+    }
+
+    // Runs searcher 0 on this thread and the others on the workers, until all have stopped
+    private int searchInParallel(Game game, long deadline, int limit) {
+        CountDownLatch done = new CountDownLatch(searchers.length - 1);
+        int[] counts = new int[searchers.length];
+
+        for (int i = 1; i < searchers.length; i++) {
+            int index = i;
+            WORKERS.execute(() -> {
+                try {
+                    counts[index] = searchers[index].search(game, deadline, limit, false);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        counts[0] = searchers[0].search(game, deadline, limit, true);
+
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        int simulations = 0;
+        for (int count : counts) {
+            simulations += count;
+        }
+        return simulations;
+    }
+
+    /**
+     * One search thread: its own random numbers, ghost model and simulation state.
+     */
+    private final class Searcher {
+        final Random random;
+        final GhostModel ghostModel;
+        final Node[] path = new Node[MAX_TREE_DEPTH + 1];
+        final double virtualLoss;
+
+        Node root;
+        int simulatedSteps; // time steps of the current simulation
+        long slowestSimulation; // decaying maximum duration of a simulation, in ns
+
+        Searcher(Random random) {
+            this.random = random;
+            this.ghostModel = new GhostModel(0.0, random); // pessimistic: ghosts always chase
+            this.virtualLoss = parallelism == Parallelism.TREE ? VIRTUAL_LOSS : 0.0;
+        }
+
+        /**
+         * Runs simulations until the deadline or the limit.
+         *
+         * @return the number of simulations run
+         */
+        int search(Game game, long deadline, int limit, boolean publishing) {
+            // Stop early enough for one more simulation as slow as the slowest recent one. The
+            // estimate also decays between searches, otherwise a single outlier (a GC pause or
+            // the thread being descheduled) longer than the budget would stop all later searches.
+            slowestSimulation >>= 1;
+            int simulations = 0;
+            long now = System.nanoTime();
+            while (simulations < limit && now + slowestSimulation < deadline) {
+                simulate(game);
+                simulations++;
+
+                long end = System.nanoTime();
+                slowestSimulation = Math.max(end - now, slowestSimulation - (slowestSimulation >> 6));
+                now = end;
+
+                if (publishing && simulations % PUBLISH_EVERY == 0)
+                    publish(bestMove(game));
+            }
+            return simulations;
+        }
+
+        /**
+         * Runs one simulation: tree policy (UCT), expansion, random rollout and backup.
+         */
+        void simulate(Game rootGame) {
+            Game game = rootGame.copy();
+            int startScore = game.getScore();
+            Node node = root;
+            int depth = 0;
+            boolean dead = false;
+
+            simulatedSteps = 0;
+            path[0] = root;
+            root.add(virtualLoss, 0.0);
+
+            // Selection and expansion
+            while (!dead && !game.gameOver() && depth < MAX_TREE_DEPTH && simulatedSteps < HORIZON) {
+                MOVE[] moves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex());
+                if (moves.length == 0)
+                    break;
+
+                Node child = select(node, moves);
+                boolean unvisited = child.visits() == 0;
+
+                child.add(virtualLoss, 0.0);
+                dead = playMacro(game, child.move, child);
+                path[++depth] = child;
+                node = child;
+
+                if (unvisited)
+                    break;
+            }
+
+            // Rollout
+            for (int i = 0; i < ROLLOUT_MACROS && !dead && !game.gameOver() && simulatedSteps < HORIZON; i++) {
+                MOVE[] moves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex(), game.getPacmanLastMoveMade());
+                if (moves.length == 0)
+                    break;
+                dead = playMacro(game, moves[random.nextInt(moves.length)], null);
+            }
+
+            double value = dead ? 0.0 : evaluate(game, game.getScore() - startScore);
+
+            // Backup, replacing the virtual loss by the real visit
+            for (int i = 0; i <= depth; i++) {
+                path[i].add(1.0 - virtualLoss, value);
+            }
+        }
+
+        // Unvisited children first (in random order), then the highest UCT value
+        private Node select(Node node, MOVE[] moves) {
+            Node best = null;
+            double bestUct = Double.NEGATIVE_INFINITY;
+            double logVisits = Math.log(Math.max(1.0, node.visits()));
+
+            for (int i = 0, offset = random.nextInt(moves.length); i < moves.length; i++) {
+                MOVE move = moves[(i + offset) % moves.length];
+                Node child = node.child(move);
+                double visits = child.visits();
+
+                double uct = visits == 0 ? Double.POSITIVE_INFINITY
+                        : child.value() / visits + EXPLORATION * Math.sqrt(logVisits / visits);
+
+                if (uct > bestUct) {
+                    bestUct = uct;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Makes the move and follows the corridor until Pac-Man reaches a junction, dies, the
+         * level ends or the simulation reaches its horizon. Records the junction reached in
+         * the node (if any).
+         *
+         * @return whether Pac-Man died
+         */
+        private boolean playMacro(Game game, MOVE move, Node node) {
+            int level = game.getCurrentLevel();
+
+            for (int step = 0; step < MAX_MACRO_STEPS && simulatedSteps < HORIZON; step++) {
+                game.advanceGame(move, ghostModel.getMoves(game));
+                simulatedSteps++;
+
+                if (game.wasPacManEaten())
+                    return true;
+                if (game.gameOver() || game.getCurrentLevel() != level)
+                    return false;
+
+                int current = game.getPacmanCurrentNodeIndex();
+                if (game.isJunction(current)) {
+                    if (node != null)
+                        node.endNode = current;
+                    return false;
+                }
+
+                MOVE[] corridor = game.getPossibleMoves(current, game.getPacmanLastMoveMade());
+                if (corridor.length > 0)
+                    move = corridor[0];
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Value of a simulation in which Pac-Man survived, between 0.5 and 1: mostly the
+     * points gained, plus a little for ending close to a pill, which steers Pac-Man
+     * towards the remaining pills when none are within the search horizon.
+     */
+    private static double evaluate(Game game, int gain) {
+        int pacman = game.getPacmanCurrentNodeIndex();
+        int nearest = Integer.MAX_VALUE;
+        int[] pills = game.getPillIndices();
+
+        for (int i = 0; i < pills.length; i++) {
+            if (game.isPillStillAvailable(i))
+                nearest = Math.min(nearest, game.getShortestPathDistance(pacman, pills[i]));
+        }
+
+        double closeness = nearest >= PILL_RANGE ? 0.0 : 1.0 - nearest / (double) PILL_RANGE;
+        return 0.5 + 0.4 * (1.0 - Math.exp(-gain / 300.0)) + 0.1 * closeness;
+    }
+
+    /**
+     * Keeps the subtree of the move played on the last tick if Pac-Man is following it:
+     * the child itself once its junction is reached, or below a new root while Pac-Man is
+     * still in the corridor leading to it. Statistics kept are decayed.
+     */
+    private Node reuseTree(Node root, Game game) {
+        if (root == null || playedMove == null || game.getCurrentLevel() != rootLevel)
+            return new Node(null);
+
+        Node child = root.children.get(playedMove.ordinal());
+        if (child == null || child.endNode < 0)
+            return new Node(null);
+
+        int current = game.getPacmanCurrentNodeIndex();
+
+        if (current == child.endNode) {
+            decay(child);
+            return child;
+        }
+
+        MOVE[] corridor = game.getPossibleMoves(current, game.getPacmanLastMoveMade());
+        if (!game.isJunction(current) && corridor.length == 1 && corridorEnd(game, current, corridor[0]) == child.endNode) {
+            Node newRoot = new Node(null);
+            decay(child);
+            child.move = corridor[0];
+            newRoot.children.set(corridor[0].ordinal(), child);
+            newRoot.add(child.visits(), child.value());
+            return newRoot;
+        }
+
+        return new Node(null);
+    }
+
+    // The junction reached by following the corridor from the node in the direction
+    private static int corridorEnd(Game game, int node, MOVE move) {
+        for (int step = 0; step < MAX_MACRO_STEPS; step++) {
+            node = game.getNeighbour(node, move);
+            if (node == -1 || game.isJunction(node))
+                return node;
+            move = game.getPossibleMoves(node, move)[0];
+        }
+        return -1;
+    }
+
+    private static void decay(Node node) {
+        node.scale(REUSE_DECAY);
+        for (int i = 0; i < MOVES.length; i++) {
+            Node child = node.children.get(i);
+            if (child != null)
+                decay(child);
+        }
+    }
+
+    /**
+     * The legal move with the most visits at the root (summed over the roots of all
+     * searchers in ROOT mode), or a fallback if nothing has been searched.
+     */
+    private MOVE bestMove(Game game) {
+        MOVE best = null;
+        double bestVisits = 0;
+
+        for (MOVE move : game.getPossibleMoves(game.getPacmanCurrentNodeIndex())) {
+            double visits = 0;
+
+            if (parallelism == Parallelism.ROOT) {
+                for (Searcher searcher : searchers) {
+                    Node child = searcher.root.children.get(move.ordinal());
+                    if (child != null)
+                        visits += child.visits();
+                }
+            } else {
+                Node child = root.children.get(move.ordinal());
+                if (child != null)
+                    visits = child.visits();
+            }
+
+            if (visits > bestVisits) {
+                bestVisits = visits;
+                best = move;
+            }
+        }
+
+        if (best != null)
+            return best;
+
+        MOVE[] moves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex(), game.getPacmanLastMoveMade());
+        return moves.length > 0 ? moves[0] : MOVE.NEUTRAL;
+    }
+
+    /**
+     * The average number of simulations per second of search time since the controller
+     * was created (over all search threads).
+     */
+    public double getSimulationsPerSecond() {
+        return totalSearchNanos == 0 ? 0 : totalSimulations / (totalSearchNanos / 1e9);
+    }
+
+    /**
+     * The number of simulations of the last search (over all search threads).
+     */
+    public int getLastSimulations() {
+        return lastSimulations;
+    }
+
+    public long getTotalSimulations() {
+        return totalSimulations;
+    }
+
+    public Parallelism getParallelism() {
+        return parallelism;
+    }
+
+    public int getThreads() {
+        return searchers.length;
+    }
+
+    /**
+     * A tree node. Visits and value are doubles (so that reused statistics can be decayed)
+     * stored as raw long bits and updated with CAS, so that several threads can update
+     * the same node without locks. Children are created with CAS as well.
+     */
+    private static final class Node {
+        private static final AtomicLongFieldUpdater<Node> VISITS = AtomicLongFieldUpdater.newUpdater(Node.class,
+                "visitBits");
+        private static final AtomicLongFieldUpdater<Node> VALUE = AtomicLongFieldUpdater.newUpdater(Node.class,
+                "valueBits");
+
+        final AtomicReferenceArray<Node> children = new AtomicReferenceArray<>(MOVES.length);
+        volatile MOVE move;
+        volatile int endNode = -1; // junction reached by the macro-action, -1 if unknown
+        private volatile long visitBits, valueBits; // 0L is 0.0
+
+        Node(MOVE move) {
+            this.move = move;
+        }
+
+        double visits() {
+            return Double.longBitsToDouble(visitBits);
+        }
+
+        double value() {
+            return Double.longBitsToDouble(valueBits);
+        }
+
+        void add(double visits, double value) {
+            if (visits != 0)
+                addTo(VISITS, visits);
+            if (value != 0)
+                addTo(VALUE, value);
+        }
+
+        // Only called between searches
+        void scale(double factor) {
+            visitBits = Double.doubleToRawLongBits(visits() * factor);
+            valueBits = Double.doubleToRawLongBits(value() * factor);
+        }
+
+        // Returns the child for the move, creating it if necessary
+        Node child(MOVE move) {
+            Node child = children.get(move.ordinal());
+            if (child == null) {
+                children.compareAndSet(move.ordinal(), null, new Node(move));
+                child = children.get(move.ordinal());
+            }
+            return child;
+        }
+
+        private void addTo(AtomicLongFieldUpdater<Node> field, double amount) {
+            while (true) {
+                long bits = field.get(this);
+                if (field.compareAndSet(this, bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + amount)))
+                    return;
+            }
+        }
+    }
+}
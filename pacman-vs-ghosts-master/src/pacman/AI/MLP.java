@@ -0,0 +1,191 @@
+package pacman.AI;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A small fully connected network (ReLU hidden layers, linear output) over one flat
+ * float[] of parameters, with backpropagation and Adam, written in plain Java.
+ *
+ * Weights are stored column-major per layer (w[offset + in * outputs + out]), so the
+ * forward pass and the weight gradient are axpy loops over contiguous memory
+ * (out[0..n) += x * w[k..k+n)), which HotSpot's superword optimisation compiles to SIMD
+ * instructions without any vector library. The network keeps the activations of the
+ * last forward pass for backward(), so an instance must not be shared between threads.
+ */
+public class MLP {
+    private final int[] sizes;
+    private final int[] weightOffsets;
+    private final int[] biasOffsets;
+
+    private final float[] params;
+    private final float[] grads;
+    private final float[] adamM;
+    private final float[] adamV;
+    private int adamStep;
+
+    private final float[][] activations; // activations[0] is the input, activations[layers] the output
+    private final float[][] deltas;
+
+    /**
+     * Creates a network with He-initialised weights.
+     *
+     * @param seed The seed of the initial weights
+     * @param sizes The number of units per layer, from the input to the output layer
+     */
+    public MLP(long seed, int... sizes) {
+        this.sizes = sizes.clone();
+        int layers = sizes.length - 1;
+
+        weightOffsets = new int[layers];
+        biasOffsets = new int[layers];
+        int count = 0;
+
+        for (int l = 0; l < layers; l++) {
+            weightOffsets[l] = count;
+            count += sizes[l] * sizes[l + 1];
+            biasOffsets[l] = count;
+            count += sizes[l + 1];
+        }
+
+        params = new float[count];
+        grads = new float[count];
+        adamM = new float[count];
+        adamV = new float[count];
+
+        activations = new float[sizes.length][];
+        deltas = new float[sizes.length][];
+        for (int l = 0; l < sizes.length; l++) {
+            activations[l] = new float[sizes[l]];
+            deltas[l] = new float[sizes[l]];
+        }
+
+        Random random = new Random(seed);
+        for (int l = 0; l < layers; l++) {
+            double scale = Math.sqrt(2.0 / sizes[l]);
+            for (int i = 0; i < sizes[l] * sizes[l + 1]; i++) {
+                params[weightOffsets[l] + i] = (float) (random.nextGaussian() * scale);
+            }
+        }
+    }
+
+    /**
+     * Computes the output of the network. The returned array is reused by the next call.
+     */
+    public float[] forward(float[] input) {
+        System.arraycopy(input, 0, activations[0], 0, sizes[0]);
+
+        for (int l = 0; l < sizes.length - 1; l++) {
+            float[] in = activations[l];
+            float[] out = activations[l + 1];
+            int outputs = sizes[l + 1];
+
+            System.arraycopy(params, biasOffsets[l], out, 0, outputs);
+            for (int i = 0; i < sizes[l]; i++) {
+                if (in[i] != 0f)
+                    axpy(in[i], params, weightOffsets[l] + i * outputs, out, 0, outputs);
+            }
+
+            if (l < sizes.length - 2)
+                relu(out, outputs);
+        }
+
+        return activations[sizes.length - 1];
+    }
+
+    /**
+     * Accumulates the gradients of the loss for the last forward pass, given the
+     * derivative of the loss with respect to the outputs.
+     */
+    public void backward(float[] outputGradient) {
+        int layers = sizes.length - 1;
+        System.arraycopy(outputGradient, 0, deltas[layers], 0, sizes[layers]);
+
+        for (int l = layers - 1; l >= 0; l--) {
+            float[] in = activations[l];
+            float[] delta = deltas[l + 1];
+            int outputs = sizes[l + 1];
+
+            // bias and weight gradients: dW[i][*] += in[i] * delta
+            axpy(1f, delta, 0, grads, biasOffsets[l], outputs);
+            for (int i = 0; i < sizes[l]; i++) {
+                if (in[i] != 0f)
+                    axpy(in[i], delta, 0, grads, weightOffsets[l] + i * outputs, outputs);
+            }
+
+            // propagate to the hidden layer below (through its ReLU)
+            if (l > 0) {
+                float[] below = deltas[l];
+                for (int i = 0; i < sizes[l]; i++) {
+                    below[i] = in[i] > 0f ? dot(params, weightOffsets[l] + i * outputs, delta, outputs) : 0f;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies one Adam step with the accumulated gradients averaged over the batch, then
+     * clears them.
+     */
+    public void step(float learningRate, int batchSize) {
+        final float beta1 = 0.9f, beta2 = 0.999f, eps = 1e-8f;
+        adamStep++;
+        float correction1 = 1f - (float) Math.pow(beta1, adamStep);
+        float correction2 = 1f - (float) Math.pow(beta2, adamStep);
+        float scale = 1f / batchSize;
+
+        for (int i = 0; i < params.length; i++) {
+            float g = grads[i] * scale;
+            adamM[i] = beta1 * adamM[i] + (1f - beta1) * g;
+            adamV[i] = beta2 * adamV[i] + (1f - beta2) * g * g;
+            params[i] -= learningRate * (adamM[i] / correction1) / ((float) Math.sqrt(adamV[i] / correction2) + eps);
+        }
+
+        Arrays.fill(grads, 0f);
+    }
+
+    /**
+     * Copies the parameters of a network with the same layer sizes (e.g., into a target network).
+     */
+    public void copyFrom(MLP other) {
+        System.arraycopy(other.params, 0, params, 0, params.length);
+    }
+
+    /**
+     * The flat parameter array (weights and biases of all layers), for saving and loading.
+     */
+    public float[] getParameters() {
+        return params;
+    }
+
+    public int getInputSize() {
+        return sizes[0];
+    }
+
+    public int getOutputSize() {
+        return sizes[sizes.length - 1];
+    }
+
+    // Kernels: simple counted loops over contiguous arrays, the form the JIT auto-vectorises
+
+    // y[yOffset..yOffset + n) += a * x[xOffset..xOffset + n)
+    private static void axpy(float a, float[] x, int xOffset, float[] y, int yOffset, int n) {
+        for (int i = 0; i < n; i++) {
+            y[yOffset + i] += a * x[xOffset + i];
+        }
+    }
+
+    private static float dot(float[] x, int xOffset, float[] y, int n) {
+        float sum = 0f;
+        for (int i = 0; i < n; i++) {
+            sum += x[xOffset + i] * y[i];
+        }
+        return sum;
+    }
+
+    private static void relu(float[] x, int n) {
+        for (int i = 0; i < n; i++) {
+            x[i] = Math.max(0f, x[i]);
+        }
+    }
+}
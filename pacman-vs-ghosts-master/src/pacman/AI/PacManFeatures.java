@@ -0,0 +1,131 @@
+package pacman.AI;
+
+import pacman.game.Constants;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * Hand-crafted features of (game state, Pac-Man move) pairs for linear Q-learning.
+ * compute() evaluates the features of every legal move once per tick into a reusable
+ * array; the Q-value of a move is then a single dot product with a weight vector.
+ *
+ * All features are measured from the node Pac-Man reaches by making the move and are
+ * scaled to [0, 1], so that they can share a learning rate.
+ */
+public class PacManFeatures {
+    public static final int BIAS = 0;
+    public static final int PILL = 1;        // closeness of the nearest pill
+    public static final int POWER_PILL = 2;  // closeness of the nearest power pill
+    public static final int DANGER = 3;       // per ghost: closeness of the ghost if it is dangerous
+    public static final int EDIBLE = DANGER + 4; // per ghost: closeness times remaining edible time
+    public static final int JUNCTION = EDIBLE + 4; // closeness of the nearest junction (escape routes)
+    public static final int EATS_PILL = JUNCTION + 1; // the move eats a pill
+    public static final int COUNT = EATS_PILL + 1;
+
+    private static final int PILL_RANGE = 100;
+    private static final int GHOST_RANGE = 20;
+    private static final int EDIBLE_RANGE = 40;
+    private static final int JUNCTION_RANGE = 30;
+
+    private static final MOVE[] MOVES = MOVE.values();
+    private static final GHOST[] GHOSTS = GHOST.values();
+
+    private final double[] values = new double[MOVES.length * COUNT]; // values[move * COUNT + feature]
+    private final boolean[] legal = new boolean[MOVES.length];
+
+    /**
+     * Computes the features of all legal Pac-Man moves in the game state.
+     */
+    public void compute(Game game) {
+        int pacman = game.getPacmanCurrentNodeIndex();
+
+        for (MOVE move : MOVES) {
+            legal[move.ordinal()] = false;
+        }
+
+        for (MOVE move : game.getPossibleMoves(pacman, game.getPacmanLastMoveMade())) {
+            int next = game.getNeighbour(pacman, move);
+            if (next == -1)
+                continue;
+
+            legal[move.ordinal()] = true;
+            computeMove(game, next, move.ordinal() * COUNT);
+        }
+    }
+
+    private void computeMove(Game game, int node, int base) {
+        values[base + BIAS] = 1.0;
+        values[base + PILL] = closeness(nearestPill(game, node, game.getPillIndices(), false), PILL_RANGE);
+        values[base + POWER_PILL] = closeness(nearestPill(game, node, game.getPowerPillIndices(), true), PILL_RANGE);
+
+        for (int g = 0; g < GHOSTS.length; g++) {
+            GHOST ghost = GHOSTS[g];
+            int ghostNode = game.getGhostCurrentNodeIndex(ghost);
+            double danger = 0, edible = 0;
+
+            if (game.getGhostLairTime(ghost) == 0 && ghostNode >= 0) {
+                int dist = game.getShortestPathDistance(node, ghostNode);
+
+                if (game.isGhostEdible(ghost))
+                    edible = closeness(dist, EDIBLE_RANGE) * game.getGhostEdibleTime(ghost) / (double) Constants.EDIBLE_TIME;
+                else
+                    danger = closeness(dist, GHOST_RANGE);
+            }
+
+            values[base + DANGER + g] = danger;
+            values[base + EDIBLE + g] = edible;
+        }
+
+        int nearestJunction = Integer.MAX_VALUE;
+        for (int junction : game.getJunctionIndices()) {
+            nearestJunction = Math.min(nearestJunction, game.getShortestPathDistance(node, junction));
+        }
+        values[base + JUNCTION] = closeness(nearestJunction, JUNCTION_RANGE);
+
+        int pill = game.getPillIndex(node);
+        values[base + EATS_PILL] = pill != -1 && game.isPillStillAvailable(pill) ? 1.0 : 0.0;
+    }
+
+    // Shortest path distance to the nearest active (power) pill, or MAX_VALUE if there is none
+    private static int nearestPill(Game game, int node, int[] pills, boolean power) {
+        int nearest = Integer.MAX_VALUE;
+        for (int i = 0; i < pills.length; i++) {
+            if (power ? game.isPowerPillStillAvailable(i) : game.isPillStillAvailable(i))
+                nearest = Math.min(nearest, game.getShortestPathDistance(node, pills[i]));
+        }
+        return nearest;
+    }
+
+    // 1 at distance 0, decreasing linearly to 0 at the range (and beyond)
+    private static double closeness(int distance, int range) {
+        return distance >= range ? 0.0 : 1.0 - distance / (double) range;
+    }
+
+    public boolean isLegal(MOVE move) {
+        return legal[move.ordinal()];
+    }
+
+    /**
+     * Returns the linear Q-value of a legal move: the dot product of its features and the weights.
+     */
+    public double dot(MOVE move, double[] weights) {
+        int base = move.ordinal() * COUNT;
+        double sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            sum += values[base + i] * weights[i];
+        }
+        return sum;
+    }
+
+    public double get(MOVE move, int feature) {
+        return values[move.ordinal() * COUNT + feature];
+    }
+
+    /**
+     * Copies the features of a move into the array (e.g., to remember those of the move made).
+     */
+    public void copy(MOVE move, double[] target) {
+        System.arraycopy(values, move.ordinal() * COUNT, target, 0, COUNT);
+    }
+}
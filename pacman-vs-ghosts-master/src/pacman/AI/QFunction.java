@@ -0,0 +1,30 @@
+package pacman.AI;
+
+import pacman.game.Constants.MOVE;
+
+/**
+ * Tabular Q-values over packed long states, as used by RLPacManV2. Implemented by
+ * QTable (single learner) and SharedQTable (several learners training in parallel).
+ */
+public interface QFunction {
+    /**
+     * Returns the Q-value of a state-move pair, or 0.0 if the state is unknown.
+     */
+    double get(long state, MOVE move);
+
+    /**
+     * Returns the highest Q-value over all moves of a state, or 0.0 if the state is unknown.
+     */
+    double max(long state);
+
+    /**
+     * Moves the Q-value of a state-move pair towards a target: Q += alpha * (target - Q).
+     * Adds the state if it is unknown.
+     */
+    void update(long state, MOVE move, double target, double alpha);
+
+    /**
+     * Adds an amount to the Q-value of a state-move pair, adding the state if it is unknown.
+     */
+    void add(long state, MOVE move, double amount);
+}
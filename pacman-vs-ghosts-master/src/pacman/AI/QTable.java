@@ -0,0 +1,225 @@
+package pacman.AI;
+
+import java.util.Arrays;
+
+import pacman.game.Constants.MOVE;
+
+/**
+ * Primitive Q-table: maps a packed long state code to one Q-value per MOVE.
+ * Uses open addressing with linear probing over parallel arrays, so lookups and
+ * updates neither allocate nor box. A state occupies 8 bytes for the key plus
+ * 5 doubles for the values.
+ *
+ * Slots are grouped into pages of PAGE_SLOTS; every write marks its page dirty so
+ * QTableFile can checkpoint only the pages that changed since the last save.
+ */
+public class QTable implements QFunction {
+    public static final int NUM_MOVES = MOVE.values().length;
+
+    private static final long EMPTY = Long.MIN_VALUE; // marks an unused slot
+    private static final double MAX_LOAD = 0.75;
+
+    static final int PAGE_SHIFT = 6;
+    static final int PAGE_SLOTS = 1 << PAGE_SHIFT; // slots per dirty page
+
+    private long[] keys;
+    private double[] values; // values[slot * NUM_MOVES + move.ordinal()]
+    private int size;
+    private int mask;
+    private long[] dirtyPages; // one bit per page of PAGE_SLOTS slots
+    private boolean resized;   // layout changed since the last checkpoint: pages no longer line up
+
+    public QTable() {
+        this(1024);
+    }
+
+    public QTable(int initialCapacity) {
+        allocate(Math.max(16, Integer.highestOneBit(Math.max(1, initialCapacity - 1)) << 1));
+    }
+
+    public double get(long state, MOVE move) {
+        int slot = find(state);
+        return slot < 0 ? 0.0 : values[slot * NUM_MOVES + move.ordinal()];
+    }
+
+    public double max(long state) {
+        int slot = find(state);
+        if (slot < 0)
+            return 0.0;
+
+        int base = slot * NUM_MOVES;
+        double max = values[base];
+        for (int i = 1; i < NUM_MOVES; i++) {
+            if (values[base + i] > max)
+                max = values[base + i];
+        }
+        return max;
+    }
+
+    /**
+     * Sets the Q-value of a state-move pair, adding the state if necessary.
+     */
+    public void set(long state, MOVE move, double value) {
+        int slot = slotFor(state);
+        values[slot * NUM_MOVES + move.ordinal()] = value;
+        markDirty(slot);
+    }
+
+    public void update(long state, MOVE move, double target, double alpha) {
+        int index = slotFor(state) * NUM_MOVES + move.ordinal();
+        values[index] += alpha * (target - values[index]);
+        markDirty(index / NUM_MOVES);
+    }
+
+    public void add(long state, MOVE move, double amount) {
+        int slot = slotFor(state);
+        values[slot * NUM_MOVES + move.ordinal()] += amount;
+        markDirty(slot);
+    }
+
+    /**
+     * Returns the slot of a state, adding it (with all Q-values 0.0) if it is unknown.
+     * The slot stays valid until the next state is added.
+     */
+    public int slotFor(long state) {
+        int slot = find(state);
+        if (slot >= 0)
+            return slot;
+
+        if (size + 1 > keys.length * MAX_LOAD) {
+            rehash(keys.length << 1);
+        }
+
+        slot = probe(state);
+        keys[slot] = state;
+        size++;
+        markDirty(slot);
+        return slot;
+    }
+
+    /**
+     * Returns the slot of a state, or -1 if the state is unknown.
+     */
+    public int find(long state) {
+        int slot = probe(state);
+        return keys[slot] == EMPTY ? -1 : slot;
+    }
+
+    public double valueAt(int slot, MOVE move) {
+        return values[slot * NUM_MOVES + move.ordinal()];
+    }
+
+    public void setValueAt(int slot, MOVE move, double value) {
+        values[slot * NUM_MOVES + move.ordinal()] = value;
+        markDirty(slot);
+    }
+
+    /**
+     * Whether the slot holds a state (used to iterate over all slots up to capacity()).
+     */
+    public boolean isUsed(int slot) {
+        return keys[slot] != EMPTY;
+    }
+
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Dirty tracking and raw access for QTableFile
+
+    private void markDirty(int slot) {
+        int page = slot >>> PAGE_SHIFT;
+        dirtyPages[page >>> 6] |= 1L << page;
+    }
+
+    boolean isPageDirty(int page) {
+        return (dirtyPages[page >>> 6] & (1L << page)) != 0;
+    }
+
+    int pageCount() {
+        return (keys.length + PAGE_SLOTS - 1) >>> PAGE_SHIFT;
+    }
+
+    boolean wasResized() {
+        return resized;
+    }
+
+    void clearDirty() {
+        Arrays.fill(dirtyPages, 0L);
+        resized = false;
+    }
+
+    long[] rawKeys() {
+        return keys;
+    }
+
+    double[] rawValues() {
+        return values;
+    }
+
+    /**
+     * Replaces the content of the table with arrays read from a checkpoint. The key array
+     * must have a power-of-two length and hold EMPTY in unused slots.
+     */
+    void restore(long[] keys, double[] values, int size) {
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+        this.mask = keys.length - 1;
+        this.dirtyPages = new long[(pageCount() + 63) >>> 6];
+        this.resized = false;
+    }
+
+    // Linear probing: returns the slot holding the state or the empty slot where it belongs
+    private int probe(long state) {
+        int slot = hash(state) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != state) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+
+        allocate(newCapacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = probe(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                System.arraycopy(oldValues, i * NUM_MOVES, values, slot * NUM_MOVES, NUM_MOVES);
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new double[capacity * NUM_MOVES];
+        mask = capacity - 1;
+        size = 0;
+        dirtyPages = new long[(pageCount() + 63) >>> 6];
+        resized = true;
+    }
+
+    // Finalizer of MurmurHash3: spreads the few low bits used by packed states over the whole int
+    static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
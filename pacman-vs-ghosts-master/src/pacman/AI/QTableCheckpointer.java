@@ -0,0 +1,210 @@
+package pacman.AI;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes checkpoints of a QTable on a background thread.
+ *
+ * The training thread only takes a snapshot of the pages that changed since the previous
+ * snapshot (an epoch), which costs O(changes) regardless of the size of the table. The
+ * background thread applies these deltas to a private shadow copy of the table and writes
+ * the shadow with QTableFile.writeAtomically(), so the disk I/O never stalls training and
+ * a crash during a write leaves the previous checkpoint intact.
+ *
+ * At most one snapshot waits for the writer: if the previous one has not been picked up yet
+ * when the next one is due, the snapshot is skipped and its changes stay marked dirty.
+ *
+ * A failed write leaves the previous checkpoint intact. The failure is reported to the
+ * training thread by the next call of maybeCheckpoint() or close(), which rethrow it.
+ */
+public class QTableCheckpointer {
+    private final QTable table;
+    private final QTableFile file;
+    private final long intervalNanos;
+    private final BlockingQueue<Delta> queue = new ArrayBlockingQueue<>(1);
+    private final Thread writer;
+
+    // Shadow copy, only touched by the writer thread after construction
+    private long[] shadowKeys;
+    private double[] shadowValues;
+    private int shadowSize;
+
+    private long nextCheckpoint;
+    private volatile int written;
+    private volatile IOException failure; // last failed write, not yet reported
+
+    /**
+     * Creates the checkpointer and starts its writer thread.
+     *
+     * @param table The table being trained (only accessed from the thread calling maybeCheckpoint())
+     * @param file The checkpoint file
+     * @param intervalMillis The minimum time between two checkpoints (0 for every call)
+     */
+    public QTableCheckpointer(QTable table, QTableFile file, long intervalMillis) {
+        this.table = table;
+        this.file = file;
+        this.intervalNanos = intervalMillis * 1_000_000L;
+        this.nextCheckpoint = System.nanoTime() + intervalNanos;
+
+        // The first epoch starts from a full copy of the table
+        shadowKeys = table.rawKeys().clone();
+        shadowValues = table.rawValues().clone();
+        shadowSize = table.size();
+        table.clearDirty();
+
+        writer = new Thread(this::writeLoop, "qtable-checkpointer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Takes a snapshot and hands it to the writer if the interval has passed.
+     * Called from the training thread, e.g. at the end of every trial.
+     *
+     * @return whether a snapshot was taken
+     * @throws IOException if a checkpoint written since the previous call failed
+     */
+    public boolean maybeCheckpoint() throws IOException {
+        rethrowFailure();
+
+        if (System.nanoTime() < nextCheckpoint || !queue.isEmpty())
+            return false;
+
+        if (!queue.offer(snapshot()))
+            return false;
+
+        nextCheckpoint = System.nanoTime() + intervalNanos;
+        return true;
+    }
+
+    /**
+     * Hands a final snapshot to the writer, waits for all pending writes and stops the thread.
+     *
+     * @throws IOException if a checkpoint written since the last maybeCheckpoint() failed
+     */
+    public void close() throws IOException {
+        try {
+            queue.put(snapshot());
+            queue.put(Delta.STOP);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rethrowFailure();
+    }
+
+    /**
+     * The number of checkpoints written so far.
+     */
+    public int getCheckpointsWritten() {
+        return written;
+    }
+
+    private void rethrowFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            failure = null;
+            throw new IOException("Q-table checkpoint to " + file.getPath() + " failed", e);
+        }
+    }
+
+    // Copies the dirty pages (or everything after a resize) and starts a new epoch
+    private Delta snapshot() {
+        Delta delta;
+
+        if (table.wasResized()) {
+            delta = new Delta(null, table.rawKeys().clone(), table.rawValues().clone(), table.size());
+        } else {
+            int dirty = 0;
+            for (int page = 0; page < table.pageCount(); page++) {
+                if (table.isPageDirty(page))
+                    dirty++;
+            }
+
+            int[] pages = new int[dirty];
+            long[] keys = new long[dirty * QTable.PAGE_SLOTS];
+            double[] values = new double[dirty * QTable.PAGE_SLOTS * QTable.NUM_MOVES];
+            int capacity = table.capacity();
+
+            for (int page = 0, i = 0; page < table.pageCount(); page++) {
+                if (!table.isPageDirty(page))
+                    continue;
+
+                int from = page << QTable.PAGE_SHIFT;
+                int length = Math.min(QTable.PAGE_SLOTS, capacity - from);
+
+                pages[i] = page;
+                System.arraycopy(table.rawKeys(), from, keys, i * QTable.PAGE_SLOTS, length);
+                System.arraycopy(table.rawValues(), from * QTable.NUM_MOVES, values,
+                        i * QTable.PAGE_SLOTS * QTable.NUM_MOVES, length * QTable.NUM_MOVES);
+                i++;
+            }
+
+            delta = new Delta(pages, keys, values, table.size());
+        }
+
+        table.clearDirty();
+        return delta;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Delta delta;
+            try {
+                delta = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (delta == Delta.STOP)
+                return;
+
+            apply(delta);
+
+            try {
+                file.writeAtomically(shadowKeys, shadowValues, shadowSize);
+                written++;
+            } catch (IOException e) {
+                failure = e; // the previous checkpoint is still valid
+            }
+        }
+    }
+
+    private void apply(Delta delta) {
+        shadowSize = delta.size;
+
+        if (delta.pages == null) {
+            shadowKeys = delta.keys;
+            shadowValues = delta.values;
+            return;
+        }
+
+        for (int i = 0; i < delta.pages.length; i++) {
+            int from = delta.pages[i] << QTable.PAGE_SHIFT;
+            int length = Math.min(QTable.PAGE_SLOTS, shadowKeys.length - from);
+
+            System.arraycopy(delta.keys, i * QTable.PAGE_SLOTS, shadowKeys, from, length);
+            System.arraycopy(delta.values, i * QTable.PAGE_SLOTS * QTable.NUM_MOVES, shadowValues,
+                    from * QTable.NUM_MOVES, length * QTable.NUM_MOVES);
+        }
+    }
+
+    // The pages changed during one epoch; pages == null means a full copy
+    private static final class Delta {
+        static final Delta STOP = new Delta(null, null, null, 0);
+
+        final int[] pages;
+        final long[] keys;
+        final double[] values;
+        final int size;
+
+        Delta(int[] pages, long[] keys, double[] values, int size) {
+            this.pages = pages;
+            this.keys = keys;
+            this.values = values;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package pacman.AI;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary storage for a QTable.
+ *
+ * The file mirrors the in-memory layout of the table:
+ * a 32-byte header (magic, version, moves per state, capacity, size),
+ * followed by the key array (capacity longs) and the value array
+ * (capacity * NUM_MOVES doubles), all little-endian. Loading is therefore
+ * two bulk copies out of one buffer instead of parsing text, and a
+ * checkpoint only rewrites the pages of slots that changed since the last
+ * one (through a writable mapping). The whole file is rewritten only when the table has grown.
+ */
+public class QTableFile {
+    private static final int MAGIC = 0x51544231; // "QTB1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int SIZE_OFFSET = 16;
+    private static final int IO_CHUNK = 1 << 20; // bytes per read or write call
+
+    private final Path path;
+    private MappedByteBuffer mapped; // writable mapping kept between checkpoints
+    private int mappedCapacity = -1;
+
+    public QTableFile(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean exists() {
+        return Files.isRegularFile(path);
+    }
+
+    /**
+     * Loads the file into the table, replacing its content. After loading the
+     * table is clean: the file and the table are identical.
+     *
+     * @throws IOException if the file cannot be read or is not a Q-table file
+     */
+    public void load(QTable table) throws IOException {
+        // Read into the heap rather than mapping: a mapping would hold the file until it is
+        // garbage collected, and on Windows the file could not be replaced or truncated meanwhile
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() < HEADER_BYTES || !readFully(channel, header) || header.getInt(0) != MAGIC
+                    || header.getInt(4) != VERSION || header.getInt(8) != QTable.NUM_MOVES)
+                throw new IOException("Not a Q-table file: " + path);
+
+            int capacity = header.getInt(12);
+            int size = header.getInt(SIZE_OFFSET);
+
+            if (Integer.bitCount(capacity) != 1 || channel.size() != fileSize(capacity))
+                throw new IOException("Truncated Q-table file: " + path);
+
+            ByteBuffer body = ByteBuffer.allocate((int) (fileSize(capacity) - HEADER_BYTES))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (!readFully(channel, body))
+                throw new IOException("Truncated Q-table file: " + path);
+
+            long[] keys = new long[capacity];
+            double[] values = new double[capacity * QTable.NUM_MOVES];
+
+            body.asLongBuffer().get(keys);
+            body.position(capacity * Long.BYTES);
+            body.asDoubleBuffer().get(values);
+
+            table.restore(keys, values, size);
+        }
+    }
+
+    // Fills the buffer from the current position of the channel and rewinds it. Reads in
+    // chunks, so the temporary direct buffer the channel copies through stays small.
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.position() < buffer.capacity()) {
+            buffer.limit(Math.min(buffer.capacity(), buffer.position() + IO_CHUNK));
+            if (channel.read(buffer) < 0)
+                return false;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Writes the changes made to the table since the last checkpoint (or load).
+     * Only dirty pages are copied into the mapping, unless the table was resized,
+     * in which case the file is rewritten at its new size.
+     *
+     * @return the number of pages written
+     */
+    public int checkpoint(QTable table) throws IOException {
+        int capacity = table.capacity();
+        boolean full = table.wasResized() || mapped == null || mappedCapacity != capacity;
+
+        if (mapped == null || mappedCapacity != capacity)
+            map(capacity);
+
+        long[] keys = table.rawKeys();
+        double[] values = table.rawValues();
+        int written = 0;
+
+        for (int page = 0; page < table.pageCount(); page++) {
+            if (full || table.isPageDirty(page)) {
+                writePage(keys, values, page, capacity);
+                written++;
+            }
+        }
+
+        mapped.putInt(SIZE_OFFSET, table.size());
+        mapped.force();
+        table.clearDirty();
+
+        return written;
+    }
+
+    /**
+     * Writes a complete table to a temporary file next to the target and moves it over
+     * the target once it has been forced to disk. A crash at any point leaves either the
+     * previous file or the new one, never a partially written file.
+     */
+    public void writeAtomically(long[] keys, double[] values, int size) throws IOException {
+        int capacity = keys.length;
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(QTable.NUM_MOVES).putInt(capacity).putInt(size);
+        header.position(HEADER_BYTES).flip(); // the rest of the header is reserved (zero)
+
+        // A heap buffer, freed with the table copy: direct memory is only released on GC, so
+        // periodic checkpoints of a large table could run out of it
+        ByteBuffer body = ByteBuffer.allocate((int) (fileSize(capacity) - HEADER_BYTES))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        body.asLongBuffer().put(keys);
+        body.position(capacity * Long.BYTES);
+        body.asDoubleBuffer().put(values);
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining())
+                channel.write(header);
+
+            // in chunks, so the temporary direct buffer the channel copies through stays small
+            for (int from = 0; from < body.capacity(); from += IO_CHUNK) {
+                body.limit(Math.min(body.capacity(), from + IO_CHUNK)).position(from);
+                while (body.hasRemaining())
+                    channel.write(body);
+            }
+            channel.force(true);
+        }
+
+        // the mapping (if any) refers to the file being replaced
+        mapped = null;
+        mappedCapacity = -1;
+
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Maps the file read-write at the size required by the capacity (growing it if necessary)
+    private void map(int capacity) throws IOException {
+        mapped = null;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            if (channel.size() > fileSize(capacity))
+                channel.truncate(fileSize(capacity)); // left over from a different table
+
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity));
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        mapped.putInt(0, MAGIC);
+        mapped.putInt(4, VERSION);
+        mapped.putInt(8, QTable.NUM_MOVES);
+        mapped.putInt(12, capacity);
+        mappedCapacity = capacity;
+    }
+
+    private void writePage(long[] keys, double[] values, int page, int capacity) {
+        int from = page << QTable.PAGE_SHIFT;
+        int to = Math.min(capacity, from + QTable.PAGE_SLOTS);
+
+        ByteBuffer keyView = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        keyView.position(HEADER_BYTES + from * Long.BYTES);
+        keyView.asLongBuffer().put(keys, from, to - from);
+
+        ByteBuffer valueView = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        valueView.position(valuesOffset(capacity) + from * QTable.NUM_MOVES * Double.BYTES);
+        valueView.asDoubleBuffer().put(values, from * QTable.NUM_MOVES, (to - from) * QTable.NUM_MOVES);
+    }
+
+    private static int valuesOffset(int capacity) {
+        return HEADER_BYTES + capacity * Long.BYTES;
+    }
+
+    private static long fileSize(int capacity) {
+        return valuesOffset(capacity) + (long) capacity * QTable.NUM_MOVES * Double.BYTES;
+    }
+}
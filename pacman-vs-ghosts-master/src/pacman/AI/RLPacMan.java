@@ -38,6 +38,13 @@ public class RLPacMan extends Controller<MOVE> {
 
     private final Map<String, Integer> visitCounts = new HashMap<>(); // State visit counts
 
+    // Experience replay (disabled unless enableReplay() is called). The buffer stores
+    // states as ids; stateNames maps an id back to its state string.
+    private ReplayBuffer replay;
+    private int[] replayBatch;
+    private final Map<String, Integer> stateIds = new HashMap<>();
+    private final List<String> stateNames = new ArrayList<>();
+
     public RLPacMan() {
         loadQTable("qtable.csv"); // Load Q-table from file if it exists
     }
@@ -72,6 +79,11 @@ public class RLPacMan extends Controller<MOVE> {
         // Q-learning update
         if (lastState != null) {
             updateQTable(lastState, lastMove, reward, state);
+
+            if (replay != null) {
+                replay.add(stateId(lastState), lastMove, reward, stateId(state), game.wasPacManEaten());
+                replayBatch();
+            }
         }
 
         // Update last state and move
@@ -184,6 +196,57 @@ public class RLPacMan extends Controller<MOVE> {
                 state, move, oldValue, newValue, reward);
     }
 
+    /**
+     * Enables experience replay: every transition is stored in a ring buffer and, after
+     * each online update, a batch of stored transitions is replayed (uniformly or by TD
+     * error). Transitions that lost a life are treated as terminal.
+     */
+    public void enableReplay(int capacity, int batchSize, boolean prioritized) {
+        replay = new ReplayBuffer(capacity, true, prioritized ? 0.6 : 0.0);
+        replayBatch = new int[batchSize];
+    }
+
+    private long stateId(String state) {
+        Integer id = stateIds.get(state);
+        if (id == null) {
+            id = stateNames.size();
+            stateIds.put(state, id);
+            stateNames.add(state);
+        }
+        return id;
+    }
+
+    /**
+     * Replays a batch of stored transitions with the Q-learning update (without the
+     * debug output of updateQTable()).
+     */
+    private void replayBatch() {
+        int n = replay.sample(replayBatch, random);
+
+        for (int i = 0; i < n; i++) {
+            int slot = replayBatch[i];
+            EnumMap<MOVE, Double> qValues = qTable.computeIfAbsent(stateNames.get((int) replay.state(slot)),
+                    s -> initMoveMap());
+            MOVE move = replay.move(slot);
+            double target = replay.reward(slot);
+
+            if (!replay.isDone(slot)) {
+                EnumMap<MOVE, Double> nextQ = qTable.get(stateNames.get((int) replay.nextState(slot)));
+                double maxNext = 0.0;
+                if (nextQ != null) {
+                    maxNext = Double.NEGATIVE_INFINITY;
+                    for (double value : nextQ.values())
+                        maxNext = Math.max(maxNext, value);
+                }
+                target += gamma * maxNext;
+            }
+
+            double oldValue = qValues.get(move);
+            qValues.put(move, oldValue + alpha * replay.weight(slot, 0.4) * (target - oldValue));
+            replay.updatePriority(slot, target - oldValue);
+        }
+    }
+
     /**
      * Initializes a move map with all Q-values set to 0.0.
      */
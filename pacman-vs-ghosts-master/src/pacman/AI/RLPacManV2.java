@@ -2,6 +2,7 @@ package pacman.AI;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.io.File;
 
@@ -21,11 +22,15 @@ public class RLPacManV2 extends Controller<MOVE> {
     private final double epsilonDecay = 0.998; // Epsilon decay per step
     private final double minEpsilon = 0.1; // Minimum exploration
 
-    // Q-table: maps state string to a map of MOVE -> Q-value
-    private final Map<String, EnumMap<MOVE, Double>> qTable = new HashMap<>();
+    // Q-table: maps the packed state code to one Q-value per MOVE
+    private final QTable qTable;
+    private final QFunction q; // qTable, or a table shared with other learners
+    private QTableFile checkpointFile; // binary checkpoint, created on first load or checkpoint
+    private QTableCheckpointer checkpointer; // set while asynchronous checkpoints are enabled
     private final Random random = new Random();
 
-    private String lastState;
+    private static final long NO_STATE = -1L;
+    private long lastState = NO_STATE;
     private MOVE lastMove;
     private int lastPacmanIndex = -1; // For movement reward
 
@@ -38,49 +43,78 @@ public class RLPacManV2 extends Controller<MOVE> {
     private final double NEUTRAL_MOVE_PENALTY = -5.0;
     private final double MOVE_REWARD = 1.1; // Reward for moving to a new node
 
-    private final Map<String, Integer> visitCounts = new HashMap<>(); // State visit counts
+    // Visit counts of states and state-move pairs for the exploration bonus, in constant memory
+    private final CountMinSketch visitCounts = new CountMinSketch(1 << 14);
+    private final double EXPLORATION_BONUS = 5.0; // UCB constant, in reward units
+
+    // Watkins Q(lambda) (disabled unless enableTraces() is called)
+    private EligibilityTraces traces;
+    private double lambda;
+    private boolean selectedGreedy; // whether selectMove() picked a move with the highest Q-value
+
+    // Experience replay (disabled unless enableReplay() is called)
+    private ReplayBuffer replay;
+    private int[] replayBatch;
+    private double replayBeta = 0.4; // importance-sampling exponent, annealed towards 1
+
+    // Packed state layout (15 bits): pill bucket, power pill bucket, ghost near, edible, quadrant
+    private static final int BUCKET_BITS = 5;
+    private static final int BUCKET_NONE = (1 << BUCKET_BITS) - 1; // no (power) pill left
+    private static final int PP_SHIFT = BUCKET_BITS;
+    private static final int GN_SHIFT = 2 * BUCKET_BITS;
+    private static final int EG_SHIFT = GN_SHIFT + 1;
+    private static final int GQ_SHIFT = EG_SHIFT + 1;
+    private static final MOVE[] MOVES = MOVE.values();
 
     public RLPacManV2() {
-        loadQTable("qtable.csv"); // Load Q-table from file if it exists
+        qTable = new QTable();
+        q = qTable;
+
+        // Prefer the binary checkpoint, fall back to the CSV export
+        if (!loadQTableBinary("qtable.bin"))
+            loadQTable("qtable.csv");
+    }
+
+    /**
+     * Creates a learner that reads and updates a Q-table shared with other learners
+     * (one per thread). It has no table of its own: load and save through the learner
+     * the shared table was created from (see shareQTable() and mergeQTable()).
+     */
+    public RLPacManV2(SharedQTable shared) {
+        qTable = null;
+        q = shared;
     }
 
     @Override
     public MOVE getMove(Game game, long timeDue) {
         // Encode the current state
-        String state = encodeState(game);
+        long state = encodeState(game);
         // Select a move using epsilon-greedy policy
         MOVE move = selectMove(state, game);
 
         if (move == MOVE.NEUTRAL) {
-            System.out.println("[DEBUG] NEUTRAL move selected for state: " + state);
+            System.out.println("[DEBUG] NEUTRAL move selected for state: " + stateToString(state));
         }
 
         // Calculate reward for the last action
-        double reward = calculateReward(game);
+        double reward = transitionReward(game, lastMove, lastState, state, lastPacmanIndex, move);
+        lastPacmanIndex = game.getPacmanCurrentNodeIndex();
 
-        // Penalize loops (revisiting the same state)
-        if (state.equals(lastState)) {
-            reward += LOOP_PENALTY;
-        }
-
-        // Penalize standing still
-        if (move == MOVE.NEUTRAL) {
-            reward += NEUTRAL_MOVE_PENALTY;
-        }
-
-        // Reward for moving to a new node
-        int currentIndex = game.getPacmanCurrentNodeIndex();
-        if (lastPacmanIndex != -1 && currentIndex != lastPacmanIndex) {
-            reward += MOVE_REWARD;
-        }
-        lastPacmanIndex = currentIndex;
-
-        // Track state visit counts
-        visitCounts.put(state, visitCounts.getOrDefault(state, 0) + 1);
+        // Track state and state-move visit counts
+        visitCounts.add(visitKey(state, null));
+        visitCounts.add(visitKey(state, move));
 
         // Q-learning update
-        if (lastState != null) {
-            updateQTable(lastState, lastMove, reward, state);
+        if (lastState != NO_STATE) {
+            if (traces != null)
+                updateWithTraces(lastState, lastMove, reward, state, selectedGreedy);
+            else
+                updateQTable(lastState, lastMove, reward, state);
+
+            if (replay != null) {
+                replay.add(lastState, lastMove, reward, state, game.wasPacManEaten());
+                replayBatch();
+            }
         }
 
         // Update last state and move
@@ -94,28 +128,34 @@ public class RLPacManV2 extends Controller<MOVE> {
     }
 
     /**
-     * Encodes the current game state as a string for Q-table lookup.
+     * Encodes the current game state as a packed code for Q-table lookup.
      * Uses bucketed distances, ghost proximity, edible flag, and ghost direction.
      */
-    private String encodeState(Game game) {
+    protected long encodeState(Game game) {
         int pacmanNode = game.getPacmanCurrentNodeIndex();
         int nearestPillDist = Integer.MAX_VALUE;
         int nearestPowerPillDist = Integer.MAX_VALUE;
 
         boolean ghostNear = false;
         boolean anyGhostEdible = false;
-        String ghostQuadrant = "N"; // N = none/default
-
-        // Find distance to nearest pill
-        for (int pillIndex : game.getActivePillsIndices()) {
-            int dist = game.getShortestPathDistance(pacmanNode, pillIndex);
-            nearestPillDist = Math.min(nearestPillDist, dist);
+        MOVE ghostQuadrant = MOVE.NEUTRAL; // NEUTRAL = none/default
+
+        // Find distance to nearest pill (iterating the pill slots avoids allocating the active index array)
+        int[] pills = game.getPillIndices();
+        for (int i = 0; i < pills.length; i++) {
+            if (game.isPillStillAvailable(i)) {
+                int dist = game.getShortestPathDistance(pacmanNode, pills[i]);
+                nearestPillDist = Math.min(nearestPillDist, dist);
+            }
         }
 
         // Find distance to nearest power pill
-        for (int ppIndex : game.getActivePowerPillsIndices()) {
-            int dist = game.getShortestPathDistance(pacmanNode, ppIndex);
-            nearestPowerPillDist = Math.min(nearestPowerPillDist, dist);
+        int[] powerPills = game.getPowerPillIndices();
+        for (int i = 0; i < powerPills.length; i++) {
+            if (game.isPowerPillStillAvailable(i)) {
+                int dist = game.getShortestPathDistance(pacmanNode, powerPills[i]);
+                nearestPowerPillDist = Math.min(nearestPowerPillDist, dist);
+            }
         }
 
         // Find closest ghost and its properties
@@ -145,7 +185,7 @@ public class RLPacManV2 extends Controller<MOVE> {
                     DM.PATH);
 
             if (dir != null) {
-                ghostQuadrant = dir.toString().substring(0, 1); // U/D/L/R/N
+                ghostQuadrant = dir;
             }
         }
 
@@ -153,44 +193,104 @@ public class RLPacManV2 extends Controller<MOVE> {
         int pillBucket = nearestPillDist / 20;
         int ppBucket = nearestPowerPillDist / 20;
 
-        // State string: pill bucket, power pill bucket, ghost near, edible, quadrant
-        return String.format("P%d_PP%d_GN%d_EG%d_GQ%s",
-                pillBucket,
-                ppBucket,
-                ghostNear ? 1 : 0,
-                anyGhostEdible ? 1 : 0,
-                ghostQuadrant);
+        return packState(pillBucket, ppBucket, ghostNear, anyGhostEdible, ghostQuadrant);
     }
 
     /**
-     * Selects a move using epsilon-greedy policy and Q-table.
-     * If all Q-values are equal, picks randomly among legal moves.
+     * Packs the state features into a code: pill bucket, power pill bucket,
+     * ghost near, edible, quadrant. Buckets that do not fit (no pill left) map to BUCKET_NONE.
      */
-    private MOVE selectMove(String state, Game game) {
-        MOVE[] possibleMoves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex(), game.getPacmanLastMoveMade());
-        List<MOVE> legalMoves = new ArrayList<>();
+    private static long packState(int pillBucket, int ppBucket, boolean ghostNear, boolean edible, MOVE quadrant) {
+        return Math.min(pillBucket, BUCKET_NONE)
+                | (long) Math.min(ppBucket, BUCKET_NONE) << PP_SHIFT
+                | (ghostNear ? 1L : 0L) << GN_SHIFT
+                | (edible ? 1L : 0L) << EG_SHIFT
+                | (long) quadrant.ordinal() << GQ_SHIFT;
+    }
+
+    /**
+     * Formats a packed state the way states were written as strings before
+     * ("P%d_PP%d_GN%d_EG%d_GQ%s"), so the CSV file stays readable and compatible.
+     */
+    private static String stateToString(long state) {
+        return "P" + unpackBucket(state & BUCKET_NONE)
+                + "_PP" + unpackBucket((state >>> PP_SHIFT) & BUCKET_NONE)
+                + "_GN" + ((state >>> GN_SHIFT) & 1)
+                + "_EG" + ((state >>> EG_SHIFT) & 1)
+                + "_GQ" + MOVES[(int) (state >>> GQ_SHIFT) & 7].toString().charAt(0);
+    }
+
+    private static long unpackBucket(long bucket) {
+        return bucket == BUCKET_NONE ? Integer.MAX_VALUE / 20 : bucket;
+    }
 
-        for (MOVE move : possibleMoves) {
-            if (move != MOVE.NEUTRAL) {
-                legalMoves.add(move);
+    /**
+     * Parses a state string written by stateToString(), returning NO_STATE if it is malformed.
+     */
+    private static long parseState(String state) {
+        String[] parts = state.split("_");
+        if (parts.length != 5) {
+            return NO_STATE;
+        }
+        try {
+            int pillBucket = Integer.parseInt(parts[0].substring(1));
+            int ppBucket = Integer.parseInt(parts[1].substring(2));
+            boolean ghostNear = parts[2].equals("GN1");
+            boolean edible = parts[3].equals("EG1");
+            MOVE quadrant = MOVE.NEUTRAL;
+            for (MOVE move : MOVES) {
+                if (parts[4].equals("GQ" + move.toString().charAt(0))) {
+                    quadrant = move;
+                }
             }
+            return packState(pillBucket, ppBucket, ghostNear, edible, quadrant);
+        } catch (NumberFormatException e) {
+            return NO_STATE;
         }
+    }
 
-        if (legalMoves.isEmpty())
+    /**
+     * Selects a move using epsilon-greedy policy and Q-table.
+     * Exploitation adds a UCB bonus that favours moves rarely tried in the state:
+     * EXPLORATION_BONUS * sqrt(ln(N(s) + 1) / (N(s, a) + 1)).
+     *
+     * The move counts as greedy (see updateWithTraces()) only if its Q-value is the
+     * highest of the legal moves: an epsilon move may happen to be greedy, and the bonus
+     * may make exploitation pick a non-greedy move. Illegal moves are left out, as their
+     * Q-values are never updated and stay at 0.
+     */
+    private MOVE selectMove(long state, Game game) {
+        // Possible moves never contain NEUTRAL, so they are all legal
+        MOVE[] legalMoves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex(), game.getPacmanLastMoveMade());
+
+        if (legalMoves.length == 0) {
+            selectedGreedy = true;
             return MOVE.NEUTRAL;
+        }
+
+        MOVE move = chooseMove(state, legalMoves);
+        double maxLegal = Double.NEGATIVE_INFINITY;
+        for (MOVE legal : legalMoves) {
+            maxLegal = Math.max(maxLegal, q.get(state, legal));
+        }
+        selectedGreedy = q.get(state, move) >= maxLegal;
+        return move;
+    }
 
+    private MOVE chooseMove(long state, MOVE[] legalMoves) {
         // Exploration: pick random legal move
         if (random.nextDouble() < epsilon) {
-            return legalMoves.get(random.nextInt(legalMoves.size()));
+            return legalMoves[random.nextInt(legalMoves.length)];
         }
 
-        // Exploitation: pick best Q-value move
-        EnumMap<MOVE, Double> moveMap = qTable.getOrDefault(state, initMoveMap());
+        // Exploitation: pick best Q-value move, plus the exploration bonus
         MOVE bestMove = MOVE.NEUTRAL;
         double bestValue = Double.NEGATIVE_INFINITY;
+        double logVisits = Math.log(visitCounts.estimate(visitKey(state, null)) + 1);
 
         for (MOVE move : legalMoves) {
-            double value = moveMap.getOrDefault(move, 0.0);
+            double bonus = EXPLORATION_BONUS * Math.sqrt(logVisits / (visitCounts.estimate(visitKey(state, move)) + 1));
+            double value = q.get(state, move) + bonus;
             if (value > bestValue) {
                 bestValue = value;
                 bestMove = move;
@@ -200,41 +300,129 @@ public class RLPacManV2 extends Controller<MOVE> {
         return bestMove;
     }
 
+    // Sketch key of a state (move == null) or a state-move pair; 7 is not a MOVE ordinal
+    private static long visitKey(long state, MOVE move) {
+        return state << 3 | (move == null ? 7 : move.ordinal());
+    }
+
     /**
      * Q-learning update rule for the Q-table.
      */
-    private void updateQTable(String state, MOVE move, double reward, String nextState) {
-        EnumMap<MOVE, Double> qValues = qTable.computeIfAbsent(state, s -> initMoveMap());
-        EnumMap<MOVE, Double> nextQ = qTable.computeIfAbsent(nextState, s -> initMoveMap());
+    protected void updateQTable(long state, MOVE move, double reward, long nextState) {
+        double maxNext = q.max(nextState);
+        q.update(state, move, reward + gamma * maxNext, alpha);
+
+        // Uncomment for debug: print Q-table updates
+        // System.out.printf("UPDATE: state=%s, move=%s, new=%.2f, reward=%.2f\n",
+        // stateToString(state), move, q.get(state, move), reward);
+    }
+
+    /**
+     * Enables Watkins Q(lambda): the TD error of every real step is also applied to the
+     * recently visited state-move pairs, weighted by their eligibility traces, so rewards
+     * (e.g., death penalties) propagate back several steps at once. Traces are kept
+     * sparse: at most 64 pairs, dropped once they decay below 0.01.
+     *
+     * @param lambda The trace decay (0 is one-step Q-learning)
+     */
+    public void enableTraces(double lambda) {
+        this.lambda = lambda;
+        this.traces = new EligibilityTraces(64, 0.01);
+    }
 
-        double oldValue = qValues.get(move);
-        double maxNext = nextQ.values().stream().max(Double::compare).orElse(0.0);
-        double newValue = oldValue + alpha * (reward + gamma * maxNext - oldValue);
+    /**
+     * Watkins Q(lambda) update: the traces are cut if the next move (already selected) is
+     * not greedy, since the rewards that follow it no longer reflect the greedy policy
+     * being learned and must not flow back into earlier pairs.
+     */
+    private void updateWithTraces(long state, MOVE move, double reward, long nextState, boolean nextGreedy) {
+        double delta = reward + gamma * q.max(nextState) - q.get(state, move);
 
-        qValues.put(move, newValue);
+        traces.visit(state, move);
+        for (int i = 0; i < traces.size(); i++) {
+            q.add(traces.state(i), traces.move(i), alpha * delta * traces.trace(i));
+        }
 
-        // Uncomment for debug: print Q-table updates
-        // System.out.printf("UPDATE: state=%s, move=%s, old=%.2f, new=%.2f,
-        // reward=%.2f\n",
-        // state, move, oldValue, newValue, reward);
+        if (nextGreedy)
+            traces.decay(gamma * lambda);
+        else
+            traces.clear();
     }
 
     /**
-     * Initializes a move map with all Q-values set to 0.0.
+     * Enables experience replay: every transition is stored in a ring buffer and, after
+     * each online update, a batch of stored transitions is replayed through the same
+     * Q-learning update. Transitions that lost a life are treated as terminal.
+     *
+     * @param capacity The number of transitions kept
+     * @param batchSize The number of transitions replayed per tick
+     * @param prioritized Whether to sample by TD error (prioritized replay) instead of uniformly
      */
-    private EnumMap<MOVE, Double> initMoveMap() {
-        EnumMap<MOVE, Double> map = new EnumMap<>(MOVE.class);
-        for (MOVE move : MOVE.values()) {
-            map.put(move, 0.0);
+    public void enableReplay(int capacity, int batchSize, boolean prioritized) {
+        replay = new ReplayBuffer(capacity, true, prioritized ? 0.6 : 0.0);
+        replayBatch = new int[batchSize];
+    }
+
+    /**
+     * Replays a batch of stored transitions (no allocation).
+     */
+    private void replayBatch() {
+        int n = replay.sample(replayBatch, random);
+
+        for (int i = 0; i < n; i++) {
+            int slot = replayBatch[i];
+            long state = replay.state(slot);
+            MOVE move = replay.move(slot);
+            double target = replay.reward(slot);
+
+            if (!replay.isDone(slot))
+                target += gamma * q.max(replay.nextState(slot));
+
+            // Prioritized samples are scaled down by their importance-sampling weight
+            double tdError = target - q.get(state, move);
+            q.update(state, move, target, alpha * replay.weight(slot, replayBeta));
+            replay.updatePriority(slot, tdError);
         }
-        return map;
+
+        replayBeta = Math.min(1.0, replayBeta + 1e-5);
     }
 
     /**
-     * Calculates the reward for the last action based on game events and ghost
-     * proximity.
+     * The reward of a transition, used for real and simulated (planning) steps alike:
+     * the events of the step (calculateReward()) plus the shaping terms.
+     *
+     * @param game The game after the step
+     * @param move The move of the step
+     * @param state The state before the step (NO_STATE if unknown)
+     * @param nextState The state after the step
+     * @param fromNode Pac-Man's node before the step (-1 if unknown)
+     * @param nextMove The move selected in the next state
      */
-    private double calculateReward(Game game) {
+    protected double transitionReward(Game game, MOVE move, long state, long nextState, int fromNode, MOVE nextMove) {
+        double reward = calculateReward(game, move);
+
+        // Penalize loops (revisiting the same state)
+        if (nextState == state) {
+            reward += LOOP_PENALTY;
+        }
+
+        // Penalize standing still
+        if (nextMove == MOVE.NEUTRAL) {
+            reward += NEUTRAL_MOVE_PENALTY;
+        }
+
+        // Reward for moving to a new node
+        if (fromNode != -1 && game.getPacmanCurrentNodeIndex() != fromNode) {
+            reward += MOVE_REWARD;
+        }
+        return reward;
+    }
+
+    /**
+     * Calculates the reward for the last action (the move made before the game
+     * reached this state) based on game events and ghost proximity.
+     */
+    protected double calculateReward(Game game, MOVE lastMove) {
         int pacman = game.getPacmanCurrentNodeIndex();
         double reward = -1.0; // Small penalty for each step
 
@@ -287,14 +475,108 @@ public class RLPacManV2 extends Controller<MOVE> {
     }
 
     /**
-     * Saves the Q-table to a file.
+     * Creates a table holding this learner's Q-values that learners on other threads
+     * can update concurrently (see RLPacManV2(SharedQTable)).
+     */
+    public SharedQTable shareQTable() {
+        return SharedQTable.copyOf(localTable());
+    }
+
+    /**
+     * Copies the Q-values of a shared table (once its learners have stopped) into this
+     * learner's table, so they can be saved or checkpointed.
+     */
+    public void mergeQTable(SharedQTable shared) {
+        shared.copyInto(localTable());
+    }
+
+    private QTable localTable() {
+        if (qTable == null)
+            throw new IllegalStateException("This learner uses a shared Q-table");
+        return qTable;
+    }
+
+    /**
+     * Writes the states changed since the last checkpoint to a binary, memory-mapped
+     * Q-table file. Unlike saveQTable() this costs O(changes) rather than O(table).
+     * While asynchronous checkpoints are enabled, this only hands a snapshot to the
+     * background writer (if the checkpoint interval has passed).
+     */
+    public void checkpointQTable(String filename) {
+        if (checkpointer != null) {
+            try {
+                checkpointer.maybeCheckpoint();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        Path path = Path.of(filename);
+        try {
+            if (checkpointFile == null || !checkpointFile.getPath().equals(path))
+                checkpointFile = new QTableFile(path);
+            checkpointFile.checkpoint(localTable());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Enables asynchronous checkpoints: from now on checkpointQTable() snapshots the
+     * changed states and a background thread writes them to the file, atomically.
+     */
+    public void startAsyncCheckpoints(String filename, long intervalMillis) {
+        stopAsyncCheckpoints();
+        checkpointFile = new QTableFile(Path.of(filename));
+        checkpointer = new QTableCheckpointer(localTable(), checkpointFile, intervalMillis);
+    }
+
+    /**
+     * Writes a final checkpoint and stops the background writer.
+     */
+    public void stopAsyncCheckpoints() {
+        if (checkpointer != null) {
+            try {
+                checkpointer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            System.out.println("Q-table checkpoints written: " + checkpointer.getCheckpointsWritten());
+            checkpointer = null;
+        }
+    }
+
+    /**
+     * Loads the Q-table from a binary checkpoint, returning false if there is none.
+     */
+    public boolean loadQTableBinary(String filename) {
+        QTableFile file = new QTableFile(Path.of(filename));
+        if (!file.exists())
+            return false;
+        try {
+            file.load(localTable());
+            checkpointFile = file;
+            System.out.println("Q-table loaded (" + qTable.size() + " states).");
+            return true;
+        } catch (IOException e) {
+            System.out.println("Could not load " + filename + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Saves the Q-table to a file (CSV export, readable and compatible with older versions).
      */
     public void saveQTable(String filename) {
+        QTable qTable = localTable();
         try (FileWriter writer = new FileWriter(filename)) {
-            for (Map.Entry<String, EnumMap<MOVE, Double>> entry : qTable.entrySet()) {
-                String state = entry.getKey();
-                for (Map.Entry<MOVE, Double> moveEntry : entry.getValue().entrySet()) {
-                    writer.write(state + "," + moveEntry.getKey() + "," + moveEntry.getValue() + "\n");
+            for (int slot = 0; slot < qTable.capacity(); slot++) {
+                if (!qTable.isUsed(slot))
+                    continue;
+                String state = stateToString(qTable.keyAt(slot));
+                for (MOVE move : MOVES) {
+                    writer.write(state + "," + move + "," + qTable.valueAt(slot, move) + "\n");
                 }
             }
             System.out.println("Q-table saved.");
@@ -311,10 +593,11 @@ public class RLPacManV2 extends Controller<MOVE> {
             while (scanner.hasNextLine()) {
                 String[] parts = scanner.nextLine().split(",");
                 if (parts.length == 3) {
-                    String state = parts[0].trim();
+                    long state = parseState(parts[0].trim());
                     MOVE move = MOVE.valueOf(parts[1].trim());
                     double value = Double.parseDouble(parts[2].trim());
-                    qTable.computeIfAbsent(state, s -> initMoveMap()).put(move, value);
+                    if (state != NO_STATE)
+                        qTable.set(state, move, value);
                 }
             }
             System.out.println("Q-table loaded.");
@@ -0,0 +1,203 @@
+package pacman.AI;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import pacman.game.Constants.MOVE;
+
+/**
+ * Fixed-capacity experience replay buffer of (state, move, reward, next state, done)
+ * transitions over packed long states. Transitions are stored in a ring of 32-byte
+ * records in a ByteBuffer, which can be allocated off-heap (direct) so that large
+ * buffers do not add to the GC heap; the newest transition overwrites the oldest.
+ *
+ * Sampling is either uniform or prioritized (proportional to |TD error|^alpha, as in
+ * prioritized experience replay). Priorities are kept in a sum tree and a min tree over
+ * the slots, so sampling, priority updates and importance-sampling weights are O(log n).
+ * Nothing allocates after construction: a batch is sampled into a caller-provided int[]
+ * of slots, which are then read through the accessors.
+ */
+public class ReplayBuffer {
+    // Record layout: state (8), next state (8), reward (8), move (1), done (1), padding
+    private static final int RECORD_BYTES = 32;
+    private static final int STATE = 0;
+    private static final int NEXT_STATE = 8;
+    private static final int REWARD = 16;
+    private static final int MOVE_OFFSET = 24;
+    private static final int DONE = 25;
+
+    private static final double PRIORITY_EPSILON = 1e-3; // keeps zero-error transitions sampleable
+    private static final MOVE[] MOVES = MOVE.values();
+
+    private final ByteBuffer records;
+    private final int capacity;
+    private int next;  // slot the next transition is written to
+    private int count; // number of valid slots
+
+    // Prioritized sampling (null for uniform sampling)
+    private final double priorityExponent;
+    private final double[] sumTree; // leaves at [leaves, 2 * leaves)
+    private final double[] minTree;
+    private final int leaves;
+    private double maxPriority = 1.0;
+
+    /**
+     * Creates a buffer with uniform sampling.
+     *
+     * @param capacity The number of transitions kept
+     * @param offHeap Whether the records are stored in a direct (off-heap) buffer
+     */
+    public ReplayBuffer(int capacity, boolean offHeap) {
+        this(capacity, offHeap, 0.0);
+    }
+
+    /**
+     * Creates a buffer.
+     *
+     * @param capacity The number of transitions kept
+     * @param offHeap Whether the records are stored in a direct (off-heap) buffer
+     * @param priorityExponent The alpha of prioritized replay (typically 0.6), or 0 for uniform sampling
+     */
+    public ReplayBuffer(int capacity, boolean offHeap, double priorityExponent) {
+        this.capacity = capacity;
+        this.records = (offHeap ? ByteBuffer.allocateDirect(capacity * RECORD_BYTES)
+                : ByteBuffer.allocate(capacity * RECORD_BYTES)).order(ByteOrder.nativeOrder());
+        this.priorityExponent = priorityExponent;
+
+        if (priorityExponent > 0) {
+            leaves = Math.max(1, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+            sumTree = new double[2 * leaves];
+            minTree = new double[2 * leaves];
+            Arrays.fill(minTree, Double.POSITIVE_INFINITY);
+        } else {
+            leaves = 0;
+            sumTree = null;
+            minTree = null;
+        }
+    }
+
+    /**
+     * Adds a transition, overwriting the oldest one if the buffer is full. New
+     * transitions get the highest priority seen so far, so each is replayed at least
+     * once with high probability.
+     */
+    public void add(long state, MOVE move, double reward, long nextState, boolean done) {
+        int offset = next * RECORD_BYTES;
+        records.putLong(offset + STATE, state);
+        records.putLong(offset + NEXT_STATE, nextState);
+        records.putDouble(offset + REWARD, reward);
+        records.put(offset + MOVE_OFFSET, (byte) move.ordinal());
+        records.put(offset + DONE, (byte) (done ? 1 : 0));
+
+        if (sumTree != null)
+            setPriority(next, maxPriority);
+
+        next = next + 1 == capacity ? 0 : next + 1;
+        count = Math.min(count + 1, capacity);
+    }
+
+    /**
+     * Samples a batch of slots (with replacement) into the array, uniformly or by priority.
+     *
+     * @return the number of slots sampled: min(slots.length, size()), 0 if the buffer is empty
+     */
+    public int sample(int[] slots, Random random) {
+        if (count == 0)
+            return 0;
+
+        int n = Math.min(slots.length, count);
+
+        if (sumTree == null) {
+            for (int i = 0; i < n; i++)
+                slots[i] = random.nextInt(count);
+        } else {
+            // Stratified: one sample from each of n equal segments of the total priority
+            double segment = sumTree[1] / n;
+            for (int i = 0; i < n; i++)
+                slots[i] = findPrefixSum((i + random.nextDouble()) * segment);
+        }
+        return n;
+    }
+
+    /**
+     * Sets the priority of a sampled transition from its new TD error (prioritized buffers only).
+     */
+    public void updatePriority(int slot, double tdError) {
+        if (sumTree == null)
+            return;
+
+        double priority = Math.pow(Math.abs(tdError) + PRIORITY_EPSILON, priorityExponent);
+        maxPriority = Math.max(maxPriority, priority);
+        setPriority(slot, priority);
+    }
+
+    /**
+     * Returns the importance-sampling weight of a sampled slot, normalised so that the
+     * largest weight is 1: (N * P(slot))^-beta / max weight. Always 1 for uniform sampling.
+     */
+    public double weight(int slot, double beta) {
+        if (sumTree == null)
+            return 1.0;
+
+        return Math.pow(sumTree[leaves + slot] / minTree[1], -beta);
+    }
+
+    public long state(int slot) {
+        return records.getLong(slot * RECORD_BYTES + STATE);
+    }
+
+    public long nextState(int slot) {
+        return records.getLong(slot * RECORD_BYTES + NEXT_STATE);
+    }
+
+    public double reward(int slot) {
+        return records.getDouble(slot * RECORD_BYTES + REWARD);
+    }
+
+    public MOVE move(int slot) {
+        return MOVES[records.get(slot * RECORD_BYTES + MOVE_OFFSET)];
+    }
+
+    public boolean isDone(int slot) {
+        return records.get(slot * RECORD_BYTES + DONE) != 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isPrioritized() {
+        return sumTree != null;
+    }
+
+    private void setPriority(int slot, double priority) {
+        int node = leaves + slot;
+        sumTree[node] = priority;
+        minTree[node] = priority;
+
+        for (node >>>= 1; node >= 1; node >>>= 1) {
+            sumTree[node] = sumTree[2 * node] + sumTree[2 * node + 1];
+            minTree[node] = Math.min(minTree[2 * node], minTree[2 * node + 1]);
+        }
+    }
+
+    // Descends the sum tree to the slot whose cumulative priority range contains the value
+    private int findPrefixSum(double value) {
+        int node = 1;
+        while (node < leaves) {
+            if (value < sumTree[2 * node] || sumTree[2 * node + 1] == 0) {
+                node = 2 * node;
+            } else {
+                value -= sumTree[2 * node];
+                node = 2 * node + 1;
+            }
+        }
+        return Math.min(node - leaves, count - 1);
+    }
+}
@@ -0,0 +1,170 @@
+package pacman.AI;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import pacman.game.Constants.MOVE;
+
+/**
+ * A fixed-capacity Q-table that can be read and updated by many threads without locks
+ * (Hogwild-style training). Keys are inserted with a compare-and-set on an empty slot
+ * of an open-addressing table; Q-values are stored as the raw long bits of the doubles
+ * and updated with a compare-and-set loop, so concurrent updates of the same value are
+ * never lost. Reads may observe a value that another thread is about to change, which
+ * is fine for Q-learning.
+ *
+ * The table does not grow: the capacity must be chosen for the state space (the 15-bit
+ * states of RLPacManV2 fit into the default capacity).
+ */
+public class SharedQTable implements QFunction {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int NUM_MOVES = QTable.NUM_MOVES;
+
+    private final AtomicLongArray keys;
+    private final AtomicLongArray values; // Double.doubleToRawLongBits, 0L is 0.0
+    private final int mask;
+
+    public SharedQTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SharedQTable(int capacity) {
+        int size = Math.max(16, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+
+        keys = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            keys.set(i, EMPTY);
+        }
+        values = new AtomicLongArray(size * NUM_MOVES);
+        mask = size - 1;
+    }
+
+    /**
+     * Creates a shared table holding the Q-values of a (single-threaded) table.
+     */
+    public static SharedQTable copyOf(QTable table) {
+        SharedQTable shared = new SharedQTable(Math.max(DEFAULT_CAPACITY, table.capacity() * 2));
+        MOVE[] moves = MOVE.values();
+
+        for (int slot = 0; slot < table.capacity(); slot++) {
+            if (!table.isUsed(slot))
+                continue;
+            int target = shared.slotFor(table.keyAt(slot));
+            for (MOVE move : moves) {
+                shared.values.set(target * NUM_MOVES + move.ordinal(),
+                        Double.doubleToRawLongBits(table.valueAt(slot, move)));
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Copies all Q-values into a (single-threaded) table. Should be called once the
+     * learners have stopped, otherwise the copy is not a consistent snapshot.
+     */
+    public void copyInto(QTable table) {
+        MOVE[] moves = MOVE.values();
+
+        for (int slot = 0; slot <= mask; slot++) {
+            long key = keys.get(slot);
+            if (key == EMPTY)
+                continue;
+            int target = table.slotFor(key);
+            for (MOVE move : moves) {
+                table.setValueAt(target, move, valueAt(slot, move));
+            }
+        }
+    }
+
+    public double get(long state, MOVE move) {
+        int slot = find(state);
+        return slot < 0 ? 0.0 : valueAt(slot, move);
+    }
+
+    public double max(long state) {
+        int slot = find(state);
+        if (slot < 0)
+            return 0.0;
+
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < NUM_MOVES; i++) {
+            max = Math.max(max, Double.longBitsToDouble(values.get(slot * NUM_MOVES + i)));
+        }
+        return max;
+    }
+
+    public void update(long state, MOVE move, double target, double alpha) {
+        int index = slotFor(state) * NUM_MOVES + move.ordinal();
+
+        while (true) {
+            long oldBits = values.get(index);
+            double oldValue = Double.longBitsToDouble(oldBits);
+            double newValue = oldValue + alpha * (target - oldValue);
+
+            if (values.compareAndSet(index, oldBits, Double.doubleToRawLongBits(newValue)))
+                return;
+        }
+    }
+
+    public void add(long state, MOVE move, double amount) {
+        int index = slotFor(state) * NUM_MOVES + move.ordinal();
+
+        while (true) {
+            long oldBits = values.get(index);
+            long newBits = Double.doubleToRawLongBits(Double.longBitsToDouble(oldBits) + amount);
+
+            if (values.compareAndSet(index, oldBits, newBits))
+                return;
+        }
+    }
+
+    /**
+     * The number of states in the table (counted, so only exact while no thread inserts).
+     */
+    public int size() {
+        int size = 0;
+        for (int slot = 0; slot <= mask; slot++) {
+            if (keys.get(slot) != EMPTY)
+                size++;
+        }
+        return size;
+    }
+
+    private double valueAt(int slot, MOVE move) {
+        return Double.longBitsToDouble(values.get(slot * NUM_MOVES + move.ordinal()));
+    }
+
+    private int find(long state) {
+        int slot = QTable.hash(state) & mask;
+
+        for (int probes = 0; probes <= mask; probes++) {
+            long key = keys.get(slot);
+            if (key == state)
+                return slot;
+            if (key == EMPTY)
+                return -1;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Claims the first empty slot with a CAS; a slot, once claimed, never changes its key
+    private int slotFor(long state) {
+        int slot = QTable.hash(state) & mask;
+
+        for (int probes = 0; probes <= mask; probes++) {
+            long key = keys.get(slot);
+            if (key == state)
+                return slot;
+            if (key == EMPTY) {
+                if (keys.compareAndSet(slot, EMPTY, state))
+                    return slot;
+                if (keys.get(slot) == state) // another thread inserted the same state
+                    return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        throw new IllegalStateException("SharedQTable is full (capacity " + (mask + 1) + ")");
+    }
+}
@@ -0,0 +1,267 @@
+package pacman.AI;
+
+import java.util.Arrays;
+
+import pacman.game.Constants;
+import pacman.game.Constants.DM;
+import pacman.game.Constants.GHOST;
+import pacman.game.Constants.MOVE;
+import pacman.game.Game;
+
+/**
+ * Time-expanded A* path planner for Pac-Man: searches over (node, tick) pairs up to a
+ * bounded horizon, so a path is only accepted if no ghost is predicted to be near
+ * Pac-Man at the tick Pac-Man passes each of its nodes.
+ *
+ * Ghost positions are predicted once per plan with a cheap model: each ghost keeps
+ * moving without reversing and at every junction takes the move towards Pac-Man's
+ * current node (away from it while edible, at half speed). Ghosts in the lair appear
+ * when their lair time runs out. A node is blocked at tick t if a dangerous ghost is
+ * predicted within EAT_DISTANCE of it. Since the ghosts react to where Pac-Man goes,
+ * during the first REACHABLE_TICKS a node is also blocked from the earliest tick any
+ * dangerous ghost can reach it (see Game.getGhostThreatTimes()); beyond that only the
+ * prediction counts, so that far ahead the plan is not boxed in.
+ *
+ * The cost of a plan is the number of ticks until Pac-Man reaches the target, and the
+ * plan must then survive until the horizon, so a target in a dead end the ghosts are
+ * closing is not taken. The heuristic is the shortest path distance to the target (0
+ * once reached), which is admissible and consistent. If there is no such plan, it leads
+ * to the state that survives longest (then has reached the target, then is closest to
+ * it). All state is kept in primitive arrays that are reused between plans; a planner
+ * must not be shared between threads.
+ */
+public class SpaceTimeAStar {
+    private static final int REACHABLE_TICKS = 40; // ticks during which any node a ghost can reach counts as blocked
+    private static final int F_SHIFT = 48, T_SHIFT = 32; // heap entry layout, see push()
+    private static final GHOST[] GHOSTS = GHOST.values();
+
+    private final int horizon;
+
+    // predicted ghost positions per tick, -1 if in the lair or not dangerous
+    private final int[][] dangerAt;
+    private int[] threatTimes;
+
+    // search state, indexed by (reached * (horizon + 1) + t) * numNodes + node
+    private int[] visited = new int[0];
+    private int[] parents = new int[0];
+    private int mark;
+    private long[] heap = new long[64];
+
+    private int[] path = new int[0];
+    private int pathLength;
+    private boolean reachedTarget;
+    private int expanded;
+
+    /**
+     * @param horizon The number of ticks to plan ahead
+     */
+    public SpaceTimeAStar(int horizon) {
+        this.horizon = horizon;
+        this.dangerAt = new int[GHOSTS.length][horizon + 1];
+    }
+
+    /**
+     * Plans a path for Pac-Man to the target.
+     *
+     * @return the first move of the plan, or null if Pac-Man cannot move
+     */
+    public MOVE plan(Game game, int target) {
+        int numNodes = game.getNumberOfNodes();
+        int layer = (horizon + 1) * numNodes; // states per phase
+        int start = game.getPacmanCurrentNodeIndex();
+        predictGhosts(game, start);
+        threatTimes = game.getGhostThreatTimes();
+        begin(2 * layer);
+
+        expanded = 0;
+        reachedTarget = false;
+        int best = -1; // state that survives longest, then has reached the target, then is closest to it
+        int bestRank = -1;
+
+        int size = 0;
+        int first = start == target ? layer + start : start;
+        visited[first] = mark;
+        parents[first] = -1;
+        size = push(size, game.getShortestPathDistance(start, target), horizon, first);
+
+        while (size > 0) {
+            long top = heap[0];
+            heap[0] = heap[--size];
+            siftDown(size);
+
+            int state = (int) top;
+            int f = (int) (top >>> F_SHIFT);
+            boolean reached = state >= layer;
+            int t = (state - (reached ? layer : 0)) / numNodes;
+            int node = state % numNodes;
+            expanded++;
+
+            if (reached && t == horizon) {
+                best = state;
+                reachedTarget = true;
+                break;
+            }
+
+            int left = reached ? 0 : Math.min(f - t, horizon); // distance left to the target
+            int rank = (t * 2 + (reached ? 1 : 0)) * (horizon + 1) + horizon - left;
+            if (rank > bestRank) {
+                best = state;
+                bestRank = rank;
+            }
+
+            if (t == horizon)
+                continue;
+
+            for (int neighbour : game.getNeighbouringNodes(node)) {
+                if (isBlocked(game, neighbour, t + 1))
+                    continue;
+
+                boolean arrives = reached || neighbour == target;
+                int next = (arrives ? layer : 0) + (t + 1) * numNodes + neighbour;
+                if (visited[next] == mark)
+                    continue;
+
+                visited[next] = mark;
+                parents[next] = state;
+                // the cost is the time taken to reach the target, so steps after it are free
+                int nextF = reached ? f : t + 1 + (arrives ? 0 : game.getShortestPathDistance(neighbour, target));
+                size = push(size, nextF, horizon - t - 1, next);
+            }
+        }
+
+        buildPath(best, layer, numNodes);
+        if (pathLength < 2)
+            return null;
+        return game.getMoveToMakeToReachDirectNeighbour(start, path[1]);
+    }
+
+    /**
+     * The nodes of the last plan, starting with Pac-Man's node (one per tick).
+     */
+    public int[] getPath() {
+        return Arrays.copyOf(path, pathLength);
+    }
+
+    /**
+     * Whether the last plan reaches the target (otherwise it ends where Pac-Man survives longest).
+     */
+    public boolean reachedTarget() {
+        return reachedTarget;
+    }
+
+    /**
+     * The number of states expanded by the last plan.
+     */
+    public int getExpanded() {
+        return expanded;
+    }
+
+    public int getHorizon() {
+        return horizon;
+    }
+
+    private boolean isBlocked(Game game, int node, int t) {
+        if (t <= REACHABLE_TICKS && threatTimes[node] != -1 && threatTimes[node] <= t)
+            return true;
+        for (int[] positions : dangerAt) {
+            int ghost = positions[t];
+            if (ghost != -1 && game.getShortestPathDistance(node, ghost) <= Constants.EAT_DISTANCE)
+                return true;
+        }
+        return false;
+    }
+
+    private void predictGhosts(Game game, int pacman) {
+        for (GHOST type : GHOSTS) {
+            int[] positions = dangerAt[type.ordinal()];
+            int node = game.getGhostCurrentNodeIndex(type);
+            MOVE last = game.getGhostLastMoveMade(type);
+            int edible = game.getGhostEdibleTime(type);
+            int lair = game.getGhostLairTime(type);
+
+            for (int t = 0; t <= horizon; t++) {
+                positions[t] = lair == 0 && edible == 0 ? node : -1;
+
+                if (lair > 0) {
+                    if (--lair == 0) {
+                        node = game.getGhostInitialNodeIndex();
+                        last = MOVE.NEUTRAL;
+                    }
+                    continue;
+                }
+
+                if (edible == 0 || edible % Constants.GHOST_SPEED_REDUCTION != 0) {
+                    MOVE move = edible > 0
+                            ? game.getApproximateNextMoveAwayFromTarget(node, pacman, last, DM.PATH)
+                            : game.getApproximateNextMoveTowardsTarget(node, pacman, last, DM.PATH);
+                    if (move != null) {
+                        node = game.getNeighbour(node, move);
+                        last = move;
+                    }
+                }
+                if (edible > 0)
+                    edible--;
+            }
+        }
+    }
+
+    private void buildPath(int state, int layer, int numNodes) {
+        int length = state % layer / numNodes + 1;
+        if (path.length < length)
+            path = new int[horizon + 1];
+
+        pathLength = length;
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = state % numNodes;
+            state = parents[state];
+        }
+    }
+
+    private void begin(int states) {
+        if (visited.length < states) {
+            visited = new int[states];
+            parents = new int[states];
+            mark = 0;
+        }
+        if (++mark == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            mark = 1;
+        }
+    }
+
+    // Binary heap of (f, ticks left, state) packed in longs: smallest f first, then the deepest state
+
+    private int push(int size, int f, int ticksLeft, int state) {
+        if (size == heap.length)
+            heap = Arrays.copyOf(heap, size << 1);
+
+        long entry = ((long) f << F_SHIFT) | ((long) ticksLeft << T_SHIFT) | state;
+        int i = size;
+        while (i > 0 && heap[(i - 1) >> 1] > entry) {
+            heap[i] = heap[(i - 1) >> 1];
+            i = (i - 1) >> 1;
+        }
+        heap[i] = entry;
+        return size + 1;
+    }
+
+    private void siftDown(int size) {
+        if (size == 0)
+            return;
+
+        long entry = heap[0];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && heap[child + 1] < heap[child])
+                child++;
+            if (heap[child] >= entry)
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = entry;
+    }
+}
@@ -0,0 +1,131 @@
+package pacman.AI;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size transposition table for search controllers: caches the value of a state
+ * (identified by a 64-bit key, e.g. Game.getStateHash()) together with the depth it was
+ * searched to, so a state reached again through another move order is not searched twice.
+ *
+ * Each slot is two longs in one long[]: the entry data and the key XOR the data. A read
+ * only succeeds if the two still match, so the table needs no locks: threads may probe and
+ * store concurrently, and an entry torn by a concurrent write reads as a miss. The data
+ * packs the value (as a float), the depth, an optional move and the search generation.
+ *
+ * Every key maps to one slot. A store replaces the entry in the slot unless that entry was
+ * stored in the current search (see newSearch()) and searched deeper, whether it has the
+ * same key (a transposition reached with less depth left) or another one.
+ */
+public class TranspositionTable {
+    /** Returned by probe() if the key is not in the table. */
+    public static final long MISS = 0;
+
+    public static final int MAX_DEPTH = 0xFF;
+
+    private static final int DEPTH_SHIFT = 32, MOVE_SHIFT = 40, GENERATION_SHIFT = 48;
+    private static final long OCCUPIED = 1L << 56; // set in every entry, so no entry equals MISS
+
+    private final long[] slots;
+    private final int mask;
+    private volatile int generation; // advanced by the owner only, see newSearch()
+
+    /**
+     * @param sizeLog2 The number of slots as a power of two (a slot takes 16 bytes)
+     */
+    public TranspositionTable(int sizeLog2) {
+        if (sizeLog2 < 1 || sizeLog2 > 26)
+            throw new IllegalArgumentException("sizeLog2 must be between 1 and 26: " + sizeLog2);
+
+        slots = new long[2 << sizeLog2];
+        mask = (1 << sizeLog2) - 1;
+    }
+
+    /**
+     * Looks the key up.
+     *
+     * @return the entry, to be read with depth(), value() and move(), or MISS
+     */
+    public long probe(long key) {
+        int i = index(key);
+        long data = slots[i + 1];
+        if (data == MISS || (slots[i] ^ data) != key)
+            return MISS;
+        return data;
+    }
+
+    /**
+     * Stores the value of the state, unless the slot holds a deeper entry of the current search.
+     *
+     * @param depth The depth the value was searched to (clamped to MAX_DEPTH)
+     * @param move  The index of the best move (e.g. MOVE.ordinal()), or -1 for none
+     */
+    public void store(long key, int depth, double value, int move) {
+        depth = Math.max(0, Math.min(depth, MAX_DEPTH));
+        int current = generation & 0xFF;
+
+        int i = index(key);
+        long old = slots[i + 1];
+        if (old != MISS && generation(old) == current && depth(old) > depth)
+            return;
+
+        long data = OCCUPIED | ((long) current << GENERATION_SHIFT) | ((long) (move & 0xFF) << MOVE_SHIFT)
+                | ((long) depth << DEPTH_SHIFT) | (Float.floatToRawIntBits((float) value) & 0xFFFFFFFFL);
+        slots[i + 1] = data;
+        slots[i] = key ^ data;
+    }
+
+    /**
+     * Starts a new search: entries of earlier searches stay readable, but are replaced
+     * regardless of their depth. The search threads sharing a table see the new generation
+     * on their next store, but only one owner may advance it (e.g. the thread that starts
+     * and joins the parallel search), between searches: the table is not meant to be shared
+     * between independent searches, which would age each other's entries.
+     */
+    public void newSearch() {
+        generation++;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+    }
+
+    /**
+     * The number of slots.
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * The depth of an entry returned by probe().
+     */
+    public static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    /**
+     * The value of an entry returned by probe().
+     */
+    public static double value(long entry) {
+        return Float.intBitsToFloat((int) entry);
+    }
+
+    /**
+     * The move of an entry returned by probe(), or -1 if it has none.
+     */
+    public static int move(long entry) {
+        int move = (int) (entry >>> MOVE_SHIFT) & 0xFF;
+        return move == 0xFF ? -1 : move;
+    }
+
+    private static int generation(long entry) {
+        return (int) (entry >>> GENERATION_SHIFT) & 0xFF;
+    }
+
+    private int index(long key) {
+        return ((int) (key ^ (key >>> 32)) & mask) << 1;
+    }
+}
@@ -5,7 +5,7 @@ import pacman.game.Constants.MOVE;
 import pacman.game.Game;
 import pacman.game.Constants.GHOST;
 
-import java.util.*;
+import java.util.BitSet;
 
 public class UCSPacMan extends Controller<MOVE> {
 
@@ -15,12 +15,17 @@ public class UCSPacMan extends Controller<MOVE> {
      * Here, UCS is used to find the safest and closest pill for PacMan, considering ghost proximity as extra cost.
      */
 
+    // reused every tick
+    private final BitSet pillNodes = new BitSet();
+    private int[] costs = new int[0];
+    private int[] parents = new int[0];
+
     @Override
     public MOVE getMove(Game game, long timeDue) {
         int current = game.getPacmanCurrentNodeIndex();
-        int[] activePills = game.getActivePillsIndices();
+        BitSet activePills = game.getActivePillNodes(pillNodes);
 
-        if (activePills.length == 0) {
+        if (activePills.isEmpty()) {
             return MOVE.NEUTRAL;
         }
 
@@ -44,45 +49,31 @@ public class UCSPacMan extends Controller<MOVE> {
      *
      * @param game   The current game state.
      * @param start  The starting node (PacMan's current position).
-     * @param pills  The indices of active pills.
-     * @return The index of the closest pill, or -1 if no path is found.
+     * @param pills  The nodes of the active pills.
+     * @return The next node on the cheapest path to a pill, or -1 if no path is found.
      */
-    private int getClosestPillUCS(Game game, int start, int[] pills) {
-        Set<Integer> visited = new HashSet<>();
-        PriorityQueue<Node> queue = new PriorityQueue<>(Comparator.comparingInt(n -> n.cost));
-        Map<Integer, Integer> cameFrom = new HashMap<>();
-
-        queue.add(new Node(start, 0));
-        visited.add(start);
-
-        Set<Integer> pillSet = new HashSet<>();
-        for (int pill : pills) pillSet.add(pill);
-
-        while (!queue.isEmpty()) {
-            Node currentNode = queue.poll();
-            int current = currentNode.index;
-
-            // Check if the current node is a pill
-            if (pillSet.contains(current)) {
-                List<Integer> path = reconstructPath(cameFrom, current);
-                if (path.size() > 1) {
-                    return path.get(1);
-                } else {
-                    return current;
-                }
-            }
+    private int getClosestPillUCS(Game game, int start, BitSet pills) {
+        int numNodes = game.getNumberOfNodes();
+        if (costs.length < numNodes) {
+            costs = new int[numNodes];
+            parents = new int[numNodes];
+        }
 
-            for (int neighbor : game.getNeighbouringNodes(current)) {
-                if (!visited.contains(neighbor)) {
-                    int penalty = getGhostProximityPenalty(game, neighbor);
-                    int newCost = currentNode.cost + 1 + penalty;
-                    queue.add(new Node(neighbor, newCost));
-                    visited.add(neighbor);
-                    cameFrom.put(neighbor, current);
-                }
-            }
+        for (int node = 0; node < numNodes; node++) {
+            costs[node] = getGhostProximityPenalty(game, node);
         }
-        return -1;
+
+        int pill = game.getNearestNodeInSet(start, pills, costs, parents);
+        if (pill == -1) {
+            return -1;
+        }
+
+        // Follow the path back to the first step
+        int step = pill;
+        while (parents[step] != -1 && parents[step] != start) {
+            step = parents[step];
+        }
+        return step;
     }
 
     /**
@@ -100,35 +91,6 @@ public class UCSPacMan extends Controller<MOVE> {
         return penalty;
     }
 
-    private static class Node {
-        int index;
-        int cost;
-
-        Node(int index, int cost) {
-            this.index = index;
-            this.cost = cost;
-        }
-    }
-
-    /**
-     * Reconstructs the path from the start to the target using the cameFrom map.
-     *
-     * @param cameFrom The map of nodes and their predecessors.
-     * @param target   The target node.
-     * @return A list representing the path from start to target.
-     */
-    private List<Integer> reconstructPath(Map<Integer, Integer> cameFrom, int target) {
-        List<Integer> path = new ArrayList<>();
-        path.add(target);
-
-        while (cameFrom.containsKey(target)) {
-            target = cameFrom.get(target);
-            path.add(0, target);
-        }
-
-        return path;
-    }
-
     // Ghost logic helpers
 
     private boolean isGhostThreatening(Game game, int ghostDistanceThreshold) {
@@ -12,6 +12,13 @@ import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import pacman.controllers.Controller;
 import pacman.controllers.HumanController;
 import pacman.controllers.KeyBoardInput;
@@ -33,12 +40,19 @@ import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
 import pacman.game.GameView;
+import pacman.game.util.LatencyHistogram;
+import pacman.game.util.TimerWheel;
 
 // AI Pacman Imort
 import pacman.AI.AIDebugWindow;
+import pacman.AI.ApproxQPacMan;
+import pacman.AI.DQNPacMan;
+import pacman.AI.ExpectimaxPacMan;
+import pacman.AI.MCTSPacMan;
 import pacman.AI.AStarPacMan;
 import pacman.AI.RLPacMan;
 import pacman.AI.RLPacManV2;
+import pacman.AI.SharedQTable;
 import pacman.AI.BFSPacMan;
 import pacman.AI.DFSPacMan;
 import pacman.AI.GreedyPacMan;
@@ -91,6 +105,9 @@ public class Executor {
 
 		// Pacman AI Runtime
 		// exec.runGameTimed(new AStarPacMan(), new MyGhosts(), visual);
+		// exec.runGameTimed(new MCTSPacMan(), new MyGhosts(), visual);
+		// exec.runGameTimed(new MCTSPacMan(MCTSPacMan.Parallelism.TREE, Runtime.getRuntime().availableProcessors()), new MyGhosts(), visual);
+		// exec.runGameTimed(new ExpectimaxPacMan(), new MyGhosts(), visual);
 
 		// exec.runGameTimedRecorded(new DFSPacMan(), new MyGhosts(), visual,
 		// "replay.txt");
@@ -108,6 +125,10 @@ public class Executor {
 		RLPacManV2 rlPacman = new RLPacManV2(); // Deel deze instantie!
 		// exec.runExperiment(new AStarPacMan(), new MyGhosts(), 100); // increased
 		exec.runExperimentRL(rlPacman, new MyGhosts(), 1000); // increased
+		// exec.runExperimentRL(new ApproxQPacMan(), new MyGhosts(), 1000); // linear features
+		// exec.runExperimentRL(new DQNPacMan(), new MyGhosts(), 1000); // neural network
+		// exec.runExperimentRLParallel(rlPacman, MyGhosts::new, 1000,
+		// Runtime.getRuntime().availableProcessors()); // same training, one actor per core
 		// exec.runGameTimed(rlPacman, new MyGhosts(), visual);
 
 		rlPacman.saveQTable("qtable.csv");
@@ -143,6 +164,11 @@ public class Executor {
 		 * RandomGhosts(),fixedTime,visual);
 		 */
 
+		/*
+		 * //run many games at once, each paced at DELAY ms per time step (stress test, no visuals).
+		 * exec.runGamesTimedConcurrently(StarterPacMan::new, StarterGhosts::new, 1000);
+		 */
+
 		/*
 		 * //run game in asynchronous mode and record it to file for replay at a later
 		 * stage.
@@ -177,8 +203,8 @@ public class Executor {
 			game = new Game(random);
 			while (!game.gameOver()) {
 				game.advanceGame(
-						pacManController.getMove(game.copy(), System.currentTimeMillis() + DELAY),
-						ghostController.getMove(game.copy(), System.currentTimeMillis() + DELAY));
+						pacManController.computeMove(game.copy(), System.currentTimeMillis() + DELAY),
+						ghostController.computeMove(game.copy(), System.currentTimeMillis() + DELAY));
 			}
 
 			avgScore += game.getScore();
@@ -188,28 +214,49 @@ public class Executor {
 
 			System.out.println("Average score over " + trials + " trials: " + (avgScore / trials));
 
-			// Correct: save Q-table once at the end
+			// Incremental binary checkpoint: only the states changed during this trial are written
 			if (pacManController instanceof RLPacManV2 rl) {
-				rl.saveQTable("qtable.csv");
-				System.out.println("Q-table saved to qtable.csv after all training.");
+				rl.checkpointQTable("qtable.bin");
 			}
 		}
 
+		// Full CSV export once at the end
+		if (pacManController instanceof RLPacManV2 rl) {
+			rl.saveQTable("qtable.csv");
+			System.out.println("Q-table saved to qtable.csv after all training.");
+		}
+
 		onLevelCompleted(game, pacManController, ghostController);
 	}
 
 	public void runExperimentRL(Controller<MOVE> pacManController, Controller<EnumMap<GHOST, MOVE>> ghostController,
 			int trials) {
+		runExperimentRL(pacManController, ghostController, trials, 10000);
+	}
+
+	/**
+	 * Runs RL training trials. The Q-table of an RLPacManV2 is checkpointed in the
+	 * background: the game thread only snapshots the states changed during a trial,
+	 * and a separate thread writes qtable.bin at most once per interval.
+	 *
+	 * @param checkpointIntervalMillis The minimum time between two checkpoints
+	 */
+	public void runExperimentRL(Controller<MOVE> pacManController, Controller<EnumMap<GHOST, MOVE>> ghostController,
+			int trials, long checkpointIntervalMillis) {
 		double avgScore = 0;
 		Game game = new Game(0);
 		int random = new Random().nextInt();
 
+		if (pacManController instanceof RLPacManV2 rl) {
+			rl.startAsyncCheckpoints("qtable.bin", checkpointIntervalMillis);
+		}
+
 		for (int i = 0; i < trials; i++) {
 			game = new Game(random);
 			while (!game.gameOver()) {
 				game.advanceGame(
-						pacManController.getMove(game.copy(), System.currentTimeMillis() + DELAY),
-						ghostController.getMove(game.copy(), System.currentTimeMillis() + DELAY));
+						pacManController.computeMove(game.copy(), System.currentTimeMillis() + DELAY),
+						ghostController.computeMove(game.copy(), System.currentTimeMillis() + DELAY));
 			}
 
 			avgScore += game.getScore();
@@ -219,16 +266,98 @@ public class Executor {
 
 			System.out.println("Average score over " + trials + " trials: " + (avgScore / trials));
 
-			// Correct: save Q-table once at the end
+			// Snapshot of the states changed during this trial, written by the background checkpointer
 			if (pacManController instanceof RLPacManV2 rl) {
-				rl.saveQTable("qtable.csv");
-				System.out.println("Q-table saved to qtable.csv after all training.");
+				rl.checkpointQTable("qtable.bin");
 			}
 		}
 
+		if (pacManController instanceof ApproxQPacMan approx) {
+			approx.saveWeights("approxq_weights.csv");
+		}
+		if (pacManController instanceof DQNPacMan dqn) {
+			dqn.saveNetwork("dqn_weights.bin");
+		}
+
+		// Full CSV export once at the end
+		if (pacManController instanceof RLPacManV2 rl) {
+			rl.stopAsyncCheckpoints();
+			rl.saveQTable("qtable.csv");
+			System.out.println("Q-table saved to qtable.csv after all training.");
+		}
+
 		onLevelCompletedRL(game, pacManController, ghostController);
 	}
 
+	/**
+	 * Runs RL training with several actors in parallel. Each actor thread has its own
+	 * RLPacManV2, Game and ghost controller, and all actors update one lock-free
+	 * SharedQTable (initialised from, and merged back into, the given learner).
+	 * Trials are handed out to the actors one at a time, so their total is the same as
+	 * with runExperimentRL() and the scores are reported per trial number.
+	 *
+	 * @param rlPacman       The learner whose Q-table is trained and saved
+	 * @param ghostFactory   Creates a ghost controller for each actor
+	 * @param trials         The total number of trials
+	 * @param actors         The number of actor threads
+	 */
+	public void runExperimentRLParallel(RLPacManV2 rlPacman, Supplier<Controller<EnumMap<GHOST, MOVE>>> ghostFactory,
+			int trials, int actors) {
+		SharedQTable shared = rlPacman.shareQTable();
+		ExecutorService workers = Executors.newFixedThreadPool(actors);
+		CountDownLatch finished = new CountDownLatch(actors);
+		AtomicInteger nextTrial = new AtomicInteger();
+		double[] scores = new double[trials];
+		int random = new Random().nextInt();
+		long start = System.currentTimeMillis();
+
+		for (int a = 0; a < actors; a++) {
+			workers.execute(() -> {
+				try {
+					Controller<MOVE> pacManController = new RLPacManV2(shared);
+					Controller<EnumMap<GHOST, MOVE>> ghostController = ghostFactory.get();
+					int i;
+
+					while ((i = nextTrial.getAndIncrement()) < trials) {
+						Game game = new Game(random);
+						while (!game.gameOver()) {
+							game.advanceGame(
+									pacManController.computeMove(game.copy(), System.currentTimeMillis() + DELAY),
+									ghostController.computeMove(game.copy(), System.currentTimeMillis() + DELAY));
+						}
+
+						scores[i] = game.getScore();
+						System.out.println("Trial " + (i + 1) + ": Score = " + game.getScore());
+						onLevelCompletedRL(game, pacManController, ghostController);
+					}
+				} finally {
+					finished.countDown();
+				}
+			});
+		}
+
+		try {
+			finished.await();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+
+		workers.shutdown();
+
+		double avgScore = 0;
+		for (double score : scores)
+			avgScore += score;
+
+		System.out.println("Actors: " + actors + ", states learned: " + shared.size());
+		System.out.println("Average score over " + trials + " trials: " + (avgScore / trials));
+		System.out.println("Training time (s): " + (System.currentTimeMillis() - start) / 1000.0);
+
+		rlPacman.mergeQTable(shared);
+		rlPacman.checkpointQTable("qtable.bin");
+		rlPacman.saveQTable("qtable.csv");
+		System.out.println("Q-table saved to qtable.csv after all training.");
+	}
+
 	/**
 	 * Run a game in asynchronous mode: the game waits until a move is returned. In
 	 * order to slow thing down in case
@@ -251,7 +380,7 @@ public class Executor {
 			gv = new GameView(game).showGame();
 
 		while (!game.gameOver()) {
-			game.advanceGame(pacManController.getMove(game.copy(), -1), ghostController.getMove(game.copy(), -1));
+			game.advanceGame(pacManController.computeMove(game.copy(), -1), ghostController.computeMove(game.copy(), -1));
 
 			try {
 				Thread.sleep(delay);
@@ -338,24 +467,23 @@ public class Executor {
 		new Thread(ghostController).start();
 
 		while (!game.gameOver()) {
-			pacManController.update(game.copy(), System.currentTimeMillis() + DELAY);
-			ghostController.update(game.copy(), System.currentTimeMillis() + DELAY);
+			long due = System.currentTimeMillis() + DELAY;
+			CountDownLatch ready = new CountDownLatch(2);
+
+			pacManController.update(game.copy(), due, ready);
+			ghostController.update(game.copy(), due, ready);
 
 			try {
-				int waited = DELAY / INTERVAL_WAIT;
+				// wake up as soon as both controllers replied, or when the time limit is up
+				ready.await(due - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
 
-				for (int j = 0; j < DELAY / INTERVAL_WAIT; j++) {
-					Thread.sleep(INTERVAL_WAIT);
+				if (fixedTime) {
+					long remaining = due - System.currentTimeMillis();
 
-					if (pacManController.hasComputed() && ghostController.hasComputed()) {
-						waited = j;
-						break;
-					}
+					if (remaining > 0)
+						Thread.sleep(remaining);
 				}
 
-				if (fixedTime)
-					Thread.sleep(((DELAY / INTERVAL_WAIT) - waited) * INTERVAL_WAIT);
-
 				game.advanceGame(pacManController.getMove(), ghostController.getMove());
 			} catch (InterruptedException e) {
 				e.printStackTrace();
@@ -365,10 +493,108 @@ public class Executor {
 				gv.repaint();
 		}
 
+		// Call onLevelCompleted after the game ends
+		onLevelCompleted(game, pacManController, ghostController);
+
 		pacManController.terminate();
 		ghostController.terminate();
 	}
 
+	/**
+	 * Run many games concurrently in asynchronous mode, each paced at DELAY ms per time step just
+	 * like runGameTimed(). This is used to stress-test controllers under realistic timing. Every game
+	 * loop runs on a virtual thread and the controllers compute their moves as virtual-thread tasks
+	 * (no dispatcher thread per controller). The pacing is done by a single shared timer wheel rather
+	 * than by sleeping threads. Without virtual-thread support (JDK 21+, or JDK 19/20 with
+	 * --enable-preview), a cached pool of platform threads is used instead.
+	 *
+	 * @param pacManFactory Creates a new Pac-Man controller for each game
+	 * @param ghostFactory  Creates a new Ghosts controller for each game
+	 * @param numGames      The number of games to run concurrently
+	 */
+	public void runGamesTimedConcurrently(Supplier<Controller<MOVE>> pacManFactory,
+			Supplier<Controller<EnumMap<GHOST, MOVE>>> ghostFactory, int numGames) {
+		ExecutorService workers = newVirtualThreadExecutor();
+		TimerWheel wheel = new TimerWheel(1, 256);
+		CountDownLatch finished = new CountDownLatch(numGames);
+		AtomicLong totalTicks = new AtomicLong();
+		AtomicLong totalScore = new AtomicLong();
+		Random seeds = new Random();
+		long start = System.currentTimeMillis();
+
+		for (int i = 0; i < numGames; i++) {
+			long seed = seeds.nextLong();
+
+			workers.execute(() -> {
+				try {
+					Controller<MOVE> pacManController = pacManFactory.get();
+					Controller<EnumMap<GHOST, MOVE>> ghostController = ghostFactory.get();
+					Game game = runGamePaced(new Game(seed), pacManController, ghostController, workers, wheel);
+
+					totalTicks.addAndGet(game.getTotalTime());
+					totalScore.addAndGet(game.getScore());
+					onLevelCompleted(game, pacManController, ghostController);
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				} finally {
+					finished.countDown();
+				}
+			});
+		}
+
+		try {
+			finished.await();
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+
+		wheel.stop();
+		workers.shutdown();
+
+		double seconds = (System.currentTimeMillis() - start) / 1000.0;
+
+		System.out.println("Concurrent games: " + numGames);
+		System.out.println("Average score: " + (totalScore.get() / (double) numGames));
+		System.out.println("Time steps per second (all games): " + (totalTicks.get() / seconds));
+	}
+
+	/**
+	 * Plays a single game paced by the timer wheel: every DELAY ms the wheel wakes up the game loop,
+	 * which then advances the game with whatever moves the controllers have stored.
+	 */
+	private Game runGamePaced(Game game, Controller<MOVE> pacManController,
+			Controller<EnumMap<GHOST, MOVE>> ghostController, ExecutorService workers, TimerWheel wheel)
+			throws InterruptedException {
+		while (!game.gameOver()) {
+			long due = System.currentTimeMillis() + DELAY;
+			CountDownLatch tick = new CountDownLatch(1);
+
+			wheel.schedule(tick::countDown, DELAY);
+
+			pacManController.update(game.copy(), due, null, workers);
+			ghostController.update(game.copy(), due, null, workers);
+
+			tick.await();
+
+			game.advanceGame(pacManController.getMove(), ghostController.getMove());
+		}
+
+		return game;
+	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for each task. The method is looked up
+	 * reflectively so that the code still compiles and runs on JDKs without virtual threads.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			System.out.println("Virtual threads not available, falling back to platform threads.");
+			return Executors.newCachedThreadPool();
+		}
+	}
+
 	/**
 	 * Run a game in asynchronous mode and recorded.
 	 *
@@ -523,7 +749,43 @@ public class Executor {
 		}
 	}
 
-	private void onLevelCompleted(Game game, Controller<MOVE> pacManController,
+	/**
+	 * Appends the latency statistics of a controller for the game just played to latency.csv and
+	 * resets them: number of calls, mean and percentiles of the time taken by getMove (in
+	 * microseconds), the number of moves computed after the deadline and the number of time steps
+	 * that were played with a fallback ('lastMove') or a published (anytime) move instead.
+	 */
+	private void writeLatencyToCSV(String aiMethod, String ghostMethod, String role, Controller<?> controller) {
+		LatencyHistogram latency = controller.getLatencyHistogram();
+
+		if (latency.getTotalCount() == 0 && controller.getFallbackMoves() == 0 && controller.getAnytimeMoves() == 0)
+			return;
+
+		String fileName = "latency.csv";
+		boolean fileExists = new File(fileName).exists();
+
+		try (FileWriter writer = new FileWriter(fileName, true)) {
+			if (!fileExists)
+				writer.append("AI Method,Ghost Method,Controller,Calls,Mean (us),P50 (us),P90 (us),P99 (us),"
+						+ "P99.9 (us),Max (us),Deadline Misses,Fallback Moves,Anytime Moves\n");
+
+			writer.append(String.format(Locale.US, "%s,%s,%s,%d,%.1f,%d,%d,%d,%d,%d,%d,%d,%d\n",
+					aiMethod, ghostMethod, role, latency.getTotalCount(), latency.getMean(),
+					latency.getValueAtPercentile(50), latency.getValueAtPercentile(90),
+					latency.getValueAtPercentile(99), latency.getValueAtPercentile(99.9), latency.getMax(),
+					controller.getDeadlineMisses(), controller.getFallbackMoves(), controller.getAnytimeMoves()));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		System.out.println(role + " latency: " + latency + ", deadline misses: " + controller.getDeadlineMisses()
+				+ ", fallback moves: " + controller.getFallbackMoves() + ", anytime moves: "
+				+ controller.getAnytimeMoves());
+
+		controller.resetStatistics();
+	}
+
+	private synchronized void onLevelCompleted(Game game, Controller<MOVE> pacManController,
 			Controller<EnumMap<GHOST, MOVE>> ghostController) {
 		double totalTime = game.getTotalTime() / 60.0;
 		int totalScore = game.getScore();
@@ -533,6 +795,8 @@ public class Executor {
 
 		// Save results to CSV
 		writeResultsToCSV(aiMethod, ghostMethod, totalTime, totalScore, level);
+		writeLatencyToCSV(aiMethod, ghostMethod, aiMethod, pacManController);
+		writeLatencyToCSV(aiMethod, ghostMethod, ghostMethod, ghostController);
 
 		System.out.println("Game Over!");
 		System.out.println("AI Method: " + aiMethod);
@@ -540,9 +804,19 @@ public class Executor {
 		System.out.println("Time: " + totalTime);
 		System.out.println("Score: " + totalScore);
 		System.out.println("Level: " + level);
+
+		if (pacManController instanceof MCTSPacMan mcts) {
+			System.out.println("Simulations per second: " + Math.round(mcts.getSimulationsPerSecond()) + " ("
+					+ mcts.getParallelism() + ", " + mcts.getThreads() + " threads)");
+		}
+
+		if (pacManController instanceof ExpectimaxPacMan expectimax) {
+			System.out.println("Average search depth: " + String.format("%.2f", expectimax.getAverageDepth()));
+			System.out.println("Transposition table hit rate: " + String.format("%.2f", expectimax.getTableHitRate()));
+		}
 	}
 
-	private void onLevelCompletedRL(Game game, Controller<MOVE> pacManController,
+	private synchronized void onLevelCompletedRL(Game game, Controller<MOVE> pacManController,
 			Controller<EnumMap<GHOST, MOVE>> ghostController) {
 
 		double totalTime = game.getTotalTime() / 60.0;
@@ -555,6 +829,8 @@ public class Executor {
 
 		// Save results to CSV
 		writeResultsToCSVRL(iteration, aiMethod, ghostMethod, totalTime, totalScore, level);
+		writeLatencyToCSV(aiMethod, ghostMethod, aiMethod, pacManController);
+		writeLatencyToCSV(aiMethod, ghostMethod, ghostMethod, ghostController);
 
 		System.out.println("Level completed:");
 		System.out.println("AI Method: " + aiMethod);
@@ -1,6 +1,9 @@
 package pacman.controllers;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import pacman.game.Game;
+import pacman.game.util.LatencyHistogram;
 
 /**
  * This class is the superclass of your controller. In contains the code required to run the 
@@ -12,10 +15,25 @@ import pacman.game.Game;
  */
 public abstract class Controller<T> implements Runnable
 {
-	private boolean alive,wasSignalled,hasComputed;
-	private volatile boolean threadStillRunning;
+	//used by run(): every computation is carried out on a newly spawned thread
+	private static final Executor THREAD_PER_TASK=new Executor()
+	{
+		public void execute(Runnable task)
+		{
+			new Thread(task).start();
+		}
+	};
+	
+	private boolean wasSignalled;
+	private volatile boolean alive,threadStillRunning,hasComputed;
 	private long timeDue;
 	private Game game;
+	private CountDownLatch ready;	//counted down once a move has been computed for the latest update (may be null)
+	private volatile long generation,computingGeneration;	//number of updates received / update the running computation belongs to
+	private volatile Published<T> published;				//best move published so far by the running computation
+	private String predictedState;							//the state the controller pondered on after its last move
+	private final LatencyHistogram latency=new LatencyHistogram();	//time taken by every call of getMove(Game,long)
+	private volatile long deadlineMisses,fallbackMoves,anytimeMoves;
 	protected T lastMove;	//this is now protected. You can set this directly in your getMove() method to save an immediate response.
 
 	/**
@@ -52,27 +70,118 @@ public abstract class Controller<T> implements Runnable
 	 * @param timeDue The time the next move is due
 	 */
 	public final void update(Game game,long timeDue)
+	{
+		update(game,timeDue,null);
+	}
+	
+	/**
+	 * Updates the game state and registers a latch that is counted down as soon as the controller
+	 * has computed its move for this game state. This allows the Executor to advance the game the
+	 * instant all controllers have replied instead of polling hasComputed().
+	 *
+	 * @param game A copy of the current game
+	 * @param timeDue The time the next move is due
+	 * @param ready The latch to count down once the move is available (may be null)
+	 */
+	public final void update(Game game,long timeDue,CountDownLatch ready)
 	{
 		synchronized(this)
 		{
 			this.game=game;
 			this.timeDue=timeDue;
+			this.ready=ready;
+			generation++;
 			wasSignalled=true;
 			hasComputed=false;
 			notify();
 		}
 	}
+	
+	/**
+	 * Updates the game state and immediately hands the computation of the move to the executor
+	 * supplied. In this mode, the controller does not need to be started as a thread (run() is
+	 * not used), which allows a large number of controllers to share a single pool of (virtual)
+	 * threads. As in the threaded mode, a new computation is only started if the previous one
+	 * has finished; otherwise the update is skipped and the last move is retained.
+	 *
+	 * @param game A copy of the current game
+	 * @param timeDue The time the next move is due
+	 * @param ready The latch to count down once the move is available (may be null)
+	 * @param workers The executor that runs the computation
+	 */
+	public final void update(Game game,long timeDue,CountDownLatch ready,Executor workers)
+	{
+		synchronized(this)
+		{
+			this.game=game;
+			this.timeDue=timeDue;
+			this.ready=ready;
+			generation++;
+			hasComputed=false;
+			startWorker(workers);
+		}
+	}
 
 	/**
-	 * Retrieves the move from the controller (whatever is stored in the class variable).
+	 * Retrieves the move from the controller. If the controller has not finished computing its move
+	 * for the latest update yet, the best move it published so far for this update is returned
+	 * (see publish()). Otherwise, whatever is stored in the class variable 'lastMove' is returned.
 	 *
-	 * @return The move stored in the class variable 'lastMove'
+	 * @return The move computed or published for the latest update, or 'lastMove'
 	 */
 	public final T getMove()
 	{
+		if(!hasComputed)
+		{
+			Published<T> anytime=published;
+			
+			if(anytime!=null && anytime.generation==generation)
+			{
+				anytimeMoves++;
+				return anytime.move;
+			}
+			
+			fallbackMoves++;
+		}
+		
 		return lastMove;
 	}
 	
+	/**
+	 * Computes the move by calling getMove(Game,long) and records how long the call took and whether
+	 * it finished after the time the move was due. This is used by the Executor in all execution modes.
+	 *
+	 * @param game A copy of the current game
+	 * @param timeDue The time the move is due (values of 0 or less disable deadline accounting)
+	 * @return The move computed by the controller
+	 */
+	public final T computeMove(Game game,long timeDue)
+	{
+		long start=System.nanoTime();
+		T move=getMove(game,timeDue);
+		
+		latency.recordNanos(System.nanoTime()-start);
+		
+		if(timeDue>0 && System.currentTimeMillis()>timeDue)
+			deadlineMisses++;
+		
+		return move;
+	}
+	
+	/**
+	 * Publishes the best move found so far while getMove(Game,long) is still running. Anytime
+	 * searches (e.g., iterative deepening or MCTS) may call this repeatedly; if the computation
+	 * overruns the time limit, the Executor plays the most recently published move instead of a
+	 * stale 'lastMove'. Moves published by a computation that belongs to an earlier update are
+	 * ignored. Calling this method is safe from any thread.
+	 *
+	 * @param bestSoFar The best move found so far
+	 */
+	protected final void publish(T bestSoFar)
+	{
+		published=new Published<T>(computingGeneration,bestSoFar);
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Runnable#run()
 	 */
@@ -94,25 +203,128 @@ public abstract class Controller<T> implements Runnable
 					}
 				}
 				
-				if(!threadStillRunning)
+				startWorker(THREAD_PER_TASK);
+				
+				wasSignalled=false;
+			}
+		}
+	}
+	
+	/**
+	 * Computes the move for the latest game state using the executor supplied, unless the
+	 * previous computation is still in progress. Must be called while holding the lock.
+	 *
+	 * @param workers The executor that runs the computation
+	 */
+	private void startWorker(Executor workers)
+	{
+		if(threadStillRunning)
+			return;
+		
+		final Game game=this.game;
+		final long timeDue=this.timeDue;
+		final CountDownLatch ready=this.ready;
+		
+		threadStillRunning=true;
+		computingGeneration=generation;
+		
+		workers.execute(new Runnable()
+		{
+			public void run()
+			{
+				compute(game,timeDue,ready);
+			}
+		});
+	}
+	
+	/**
+	 * The body of a worker: computes the move and then, if the controller predicts the next state,
+	 * keeps pondering on it until the next update arrives. An update that arrives while pondering
+	 * is picked up by the same worker straight away.
+	 */
+	private void compute(Game game,long timeDue,CountDownLatch ready)
+	{
+		while(true)
+		{
+			lastMove = computeMove(game,timeDue);
+			hasComputed=true;
+			
+			if(ready!=null)
+				ready.countDown();
+			
+			Game predicted=predictNextState(game,lastMove);
+			
+			if(predicted!=null)
+			{
+				predictedState=predicted.getGameState();
+				onIdle(predicted);
+			}
+			
+			synchronized(this)
+			{
+				if(predicted==null || !alive || generation==computingGeneration)
 				{
-					new Thread()
-					{
-						public void run()
-						{
-							threadStillRunning=true;
-							lastMove = getMove(game,timeDue);
-							hasComputed=true;
-							threadStillRunning=false;
-						}
-					}.start();
+					threadStillRunning=false;
+					return;
 				}
 				
-				wasSignalled=false;
+				game=this.game;
+				timeDue=this.timeDue;
+				ready=this.ready;
+				computingGeneration=generation;
 			}
 		}
 	}
 	
+	/**
+	 * Predicts the state of the game after the move just computed has been played. If a state is
+	 * returned, the controller ponders on it (see onIdle()) while waiting for the next update. The
+	 * default implementation returns null, i.e., the controller does not ponder.
+	 *
+	 * @param game The game the move was computed for
+	 * @param move The move computed
+	 * @return The predicted next state, or null if the controller should not ponder
+	 */
+	protected Game predictNextState(Game game,T move)
+	{
+		return null;
+	}
+	
+	/**
+	 * Called once the move has been computed, with the state predicted by predictNextState(). The
+	 * controller may use the idle time until the next update to search ahead (e.g., grow a search
+	 * tree or fill caches). Implementations should return as soon as shouldStopPondering() returns
+	 * true. On the next call of getMove(Game,long), wasPredicted() tells whether that work applies.
+	 *
+	 * @param predictedNext The predicted next state of the game (may be modified)
+	 */
+	protected void onIdle(Game predictedNext)
+	{
+	}
+	
+	/**
+	 * Whether pondering should stop because a new update has arrived or the controller has been
+	 * terminated.
+	 *
+	 * @return true if onIdle() should return
+	 */
+	protected final boolean shouldStopPondering()
+	{
+		return !alive || generation!=computingGeneration;
+	}
+	
+	/**
+	 * Whether the game received matches the state the controller pondered on during the last
+	 * idle phase. If so, search state carried over from onIdle() is valid for this game.
+	 *
+	 * @param game The game received in getMove(Game,long)
+	 * @return true if the game is identical to the predicted state
+	 */
+	protected final boolean wasPredicted(Game game)
+	{
+		return predictedState!=null && predictedState.equals(game.getGameState());
+	}
+	
 	/**
 	 * This method is used to check whether the controller computed a move since the last
 	 * update of the game.
@@ -124,6 +336,57 @@ public abstract class Controller<T> implements Runnable
 		return hasComputed;
 	}
 
+	/**
+	 * Returns the latency histogram of all calls of getMove(Game,long) made through computeMove().
+	 * 
+	 * @return The latency histogram (in microseconds)
+	 */
+	public final LatencyHistogram getLatencyHistogram()
+	{
+		return latency;
+	}
+	
+	/**
+	 * Returns the number of moves that were computed after the time they were due.
+	 * 
+	 * @return The number of deadline misses
+	 */
+	public final long getDeadlineMisses()
+	{
+		return deadlineMisses;
+	}
+	
+	/**
+	 * Returns the number of times the Executor asked for a move before the controller had computed
+	 * one for the latest update, and received 'lastMove' instead.
+	 * 
+	 * @return The number of fallback moves
+	 */
+	public final long getFallbackMoves()
+	{
+		return fallbackMoves;
+	}
+	
+	/**
+	 * Returns the number of times the Executor asked for a move before the controller had computed
+	 * one for the latest update, and received a move published via publish() instead.
+	 * 
+	 * @return The number of published (anytime) moves played
+	 */
+	public final long getAnytimeMoves()
+	{
+		return anytimeMoves;
+	}
+	
+	/**
+	 * Clears the latency histogram and all counters (e.g., at the start of a new game).
+	 */
+	public final void resetStatistics()
+	{
+		latency.reset();
+		deadlineMisses=fallbackMoves=anytimeMoves=0;
+	}
+	
 	/**
 	 * Compute the next move given a copy of the current game and a time the move has to be computed by.
 	 * This is the method contestants need to implement. Many examples are available in
@@ -136,4 +399,17 @@ public abstract class Controller<T> implements Runnable
 	 * @return The move to be played (i.e., the move calculated by your controller)
 	 */
 	public abstract T getMove(Game game,long timeDue);
+	
+	//a published move, tagged with the update it was computed for
+	private static final class Published<T>
+	{
+		final long generation;
+		final T move;
+		
+		Published(long generation,T move)
+		{
+			this.generation=generation;
+			this.move=move;
+		}
+	}
 }
\ No newline at end of file
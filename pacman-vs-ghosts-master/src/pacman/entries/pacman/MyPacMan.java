@@ -19,65 +19,133 @@ import java.util.Random;
 
 public class MyPacMan extends Controller<MOVE> {
 
-	private static final int LOOKAHEAD_DEPTH = 3;
+	private static final int LOOKAHEAD_DEPTH = 20;
 	private final Random rnd = new Random();
 
+	// one pre-allocated game per ply, overwritten with copyInto() so the lookahead does not allocate
+	private final Game[] stack = new Game[LOOKAHEAD_DEPTH];
+	private final EnumMap<GHOST, MOVE> ghostMoves = new EnumMap<>(GHOST.class);
+
+	private MOVE ponderedMove; // best move for the predicted state, computed while idle
+	private boolean pondering; // whether the lookahead runs in onIdle() and must stop on shouldStopPondering()
+
 	@Override
 	public MOVE getMove(Game game, long timeDue) {
-		AIDebugWindow.getInstance();
+		if (AIDebugWindow.isLogging())
+			AIDebugWindow.getInstance();
+
+		// reuse the search done while pondering if the game went as predicted
+		MOVE pondered = ponderedMove;
+		ponderedMove = null;
+
+		if (pondered != null && wasPredicted(game))
+			return pondered;
+
 		return getBestMoveLookahead(game, LOOKAHEAD_DEPTH);
 	}
 
+	/**
+	 * Predicts the next state assuming the ghosts keep their current directions.
+	 */
+	@Override
+	protected Game predictNextState(Game game, MOVE move) {
+		Game next = game.copy();
+		next.advanceGame(move, getGhostMoves(next));
+		return next;
+	}
+
+	@Override
+	protected void onIdle(Game predictedNext) {
+		pondering = true;
+		try {
+			ponderedMove = getBestMoveLookahead(predictedNext, LOOKAHEAD_DEPTH);
+		} finally {
+			pondering = false;
+		}
+	}
+
+	// Pondering is abandoned as soon as the next update arrives
+	private boolean isInterrupted() {
+		return pondering && shouldStopPondering();
+	}
+
 	/**
 	 * Strategy 1: Depth-limited lookahead (greedy score-based)
+	 *
+	 * @return the best move, or null if pondering was interrupted
 	 */
 	private MOVE getBestMoveLookahead(Game game, int depth) {
-		AIDebugWindow.getInstance().log("\n=== [" + System.currentTimeMillis() % 100000 + "] New decision round ===");
+		boolean debug = AIDebugWindow.isLogging();
+		if (debug)
+			AIDebugWindow.getInstance().log("\n=== [" + System.currentTimeMillis() % 100000 + "] New decision round ===");
+
 		MOVE[] possibleMoves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex());
 		MOVE bestMove = MOVE.NEUTRAL;
 		int bestScore = Integer.MIN_VALUE;
 
 		for (MOVE move : possibleMoves) {
-			Game copy = game.copy();
-			copy.advanceGame(move, getGhostMoves(copy));
-			int score = simulate(copy, depth - 1);
+			if (isInterrupted())
+				return null;
+
+			Game first = copyToPly(game, 0);
+			first.advanceGame(move, getGhostMoves(first));
+			int score = simulate(1, depth - 1);
+			if (isInterrupted())
+				return null;
+
 			if (score > bestScore) {
 				bestScore = score;
 				bestMove = move;
+				publish(bestMove); // played if the remaining root moves overrun the deadline
 			}
-			AIDebugWindow.getInstance().log("Testing move: " + move + " → SimScore: " + score);
+			if (debug)
+				AIDebugWindow.getInstance().log("Testing move: " + move + " → SimScore: " + score);
 		}
 
-		AIDebugWindow.getInstance().log("Chosen move: " + bestMove + " with score: " + bestScore);
+		if (debug)
+			AIDebugWindow.getInstance().log("Chosen move: " + bestMove + " with score: " + bestScore);
 
 		return bestMove;
 	}
 
 	/**
-	 * Simulate depth-limited random path and return score
+	 * Simulate depth-limited random path and return score. The state after the previous
+	 * ply is stack[ply - 1]; it is left untouched and this ply plays on stack[ply]. Stops
+	 * early if pondering is interrupted (the caller then discards the score).
 	 */
-	private int simulate(Game game, int depth) {
-		if (depth == 0 || game.gameOver()) {
-			return game.getScore();
+	private int simulate(int ply, int depth) {
+		Game previous = stack[ply - 1];
+		if (depth == 0 || previous.gameOver() || isInterrupted()) {
+			return previous.getScore();
 		}
 
-		MOVE[] moves = game.getPossibleMoves(game.getPacmanCurrentNodeIndex());
+		MOVE[] moves = previous.getPossibleMoves(previous.getPacmanCurrentNodeIndex());
 		if (moves.length == 0)
-			return game.getScore();
+			return previous.getScore();
 
+		Game game = copyToPly(previous, ply);
 		MOVE randomMove = moves[rnd.nextInt(moves.length)];
 		game.advanceGame(randomMove, getGhostMoves(game));
-		return simulate(game, depth - 1);
+		return simulate(ply + 1, depth - 1);
+	}
+
+	// Copies the game into the pre-allocated game of the ply (allocated on first use only)
+	private Game copyToPly(Game game, int ply) {
+		if (stack[ply] == null)
+			stack[ply] = game.copy();
+		else
+			game.copyInto(stack[ply]);
+		return stack[ply];
 	}
 
 	/**
-	 * Neutral ghost logic (replaces learning opponent)
+	 * Neutral ghost logic (replaces learning opponent). Returns the same map on every call:
+	 * advanceGame() only reads it during the update.
 	 */
 	private EnumMap<GHOST, MOVE> getGhostMoves(Game game) {
-		EnumMap<GHOST, MOVE> moves = new EnumMap<>(GHOST.class);
 		for (GHOST ghost : GHOST.values()) {
-			moves.put(ghost, game.getGhostLastMoveMade(ghost)); // passief gedrag
+			ghostMoves.put(ghost, game.getGhostLastMoveMade(ghost)); // passief gedrag
 		}
-		return moves;
+		return ghostMoves;
 	}
 }
\ No newline at end of file
@@ -74,7 +74,6 @@ public final class Constants
 	public static final int NUM_LIVES=3;					//total number of lives Ms Pac-Man has (current + NUM_LIVES-1 spares)
 	public static final int GHOST_SPEED_REDUCTION=2;		//difference in speed when ghosts are edible (every GHOST_SPEED_REDUCTION, a ghost remains stationary)
 	public static final int EDIBLE_ALERT=30;				//for display only (ghosts turning blue)
-	public static final int INTERVAL_WAIT=1;				//for quicker execution: check every INTERVAL_WAIT ms to see if controllers have returned
 		
 	//for Competition
 	public static final int WAIT_LIMIT=5000;				//time limit in milliseconds for the controller to initialise;
@@ -1,5 +1,6 @@
 package pacman.game;
 
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.EnumMap;
 import java.util.Random;
@@ -7,6 +8,7 @@ import java.util.Map.Entry;
 import pacman.game.Constants.DM;
 import pacman.game.Constants.MOVE;
 import pacman.game.internal.Ghost;
+import pacman.game.internal.JunctionGraph;
 import pacman.game.internal.Maze;
 import pacman.game.internal.Node;
 import pacman.game.internal.PacMan;
@@ -70,6 +72,14 @@ public final class Game
 	private Random rnd;
 	private long seed;	
 	
+	//distance fields cached for the current tick (see getPacManDistances and getGhostDistances)
+	private int[] pacmanDistances;
+	private int[][] ghostDistances;
+	private int[] threatTimes;
+	private BitSet safeRegion;
+	private int validDistances;								//bit 0: Ms Pac-Man, bit 1+ordinal: ghost, then THREAT_BIT and SAFE_BIT
+	private static final int THREAT_BIT=1<<(NUM_GHOSTS+1),SAFE_BIT=THREAT_BIT<<1;
+	
 	/////////////////////////////////////////////////////////////////////////////
 	///////////////////  Constructors and initialisers  /////////////////////////
 	/////////////////////////////////////////////////////////////////////////////
@@ -241,6 +251,40 @@ public final class Game
 		return sb.toString();
 	}
 	
+	/**
+	 * Gets a 64-bit hash of the positions in the game: the maze and level, Ms Pac-Man's node and last
+	 * move, every ghost's node, last move, edible time and lair time, and the remaining pills and power
+	 * pills. The score, the lives and the times are not included, so states that only differ in those
+	 * hash the same. Meant as the key of a transposition table (see pacman.AI.TranspositionTable); it
+	 * does not allocate.
+	 *
+	 * @return The hash of the game state
+	 */
+	public long getStateHash()
+	{
+		long h=mix(mazeIndex*31L+levelCount);
+		h=mix(h^(pacman.currentNodeIndex<<3|pacman.lastMoveMade.ordinal()));
+
+		for(Ghost ghost : ghosts.values())
+			h=mix(h^((long)ghost.currentNodeIndex<<3|ghost.lastMoveMade.ordinal())^(long)ghost.edibleTime<<20^(long)ghost.lairTime<<40);
+
+		for(int i=pills.nextSetBit(0);i>=0;i=pills.nextSetBit(i+1))
+			h=(h^i)*0x9E3779B97F4A7C15L;
+
+		for(int i=powerPills.nextSetBit(0);i>=0;i=powerPills.nextSetBit(i+1))
+			h=(h^(i+1L)<<32)*0x9E3779B97F4A7C15L;
+
+		return mix(h);
+	}
+
+	//finaliser of SplitMix64: spreads every input bit over the whole hash
+	private static long mix(long h)
+	{
+		h=(h^(h>>>30))*0xBF58476D1CE4E5B9L;
+		h=(h^(h>>>27))*0x94D049BB133111EBL;
+		return h^(h>>>31);
+	}
+
 	/**
 	 * Sets the game state from a string: the inverse of getGameState(). It reconstructs
 	 * all the game's variables from the string.
@@ -249,6 +293,7 @@ public final class Game
 	 */
 	public void setGameState(String gameState)
 	{	
+		validDistances=0;
 		String[] values=gameState.split(",");
 		
 		int index=0;
@@ -336,6 +381,79 @@ public final class Game
 		return copy;	
 	}
 
+	/**
+	 * Overwrites the target with an exact copy of this game. Unlike copy(), this reuses the
+	 * objects of the target (pill sets, Ms Pac-Man, ghosts and maps), so a forward search can
+	 * keep one pre-allocated game per depth and copy into it without allocating.
+	 *
+	 * @param target The game to overwrite, usually created earlier with copy()
+	 */
+	public void copyInto(Game target)
+	{
+		if(target==this)
+			return;
+
+		if(target.pills==null)
+		{
+			target.pills=new BitSet(pills.size());
+			target.powerPills=new BitSet(powerPills.size());
+			target.ghostsEaten=new EnumMap<GHOST,Boolean>(GHOST.class);
+			target.ghosts=new EnumMap<GHOST,Ghost>(GHOST.class);
+		}
+
+		if(target.rnd==null)
+			target.rnd=new Random(seed);
+		else
+			target.rnd.setSeed(seed);
+
+		target.seed=seed;
+		target.validDistances=0;
+		target.currentMaze=currentMaze;
+		target.pills.clear();
+		target.pills.or(pills);
+		target.powerPills.clear();
+		target.powerPills.or(powerPills);
+		target.mazeIndex=mazeIndex;
+		target.levelCount=levelCount;
+		target.currentLevelTime=currentLevelTime;
+		target.totalTime=totalTime;
+		target.score=score;
+		target.ghostEatMultiplier=ghostEatMultiplier;
+		target.gameOver=gameOver;
+		target.timeOfLastGlobalReversal=timeOfLastGlobalReversal;
+		target.pacmanWasEaten=pacmanWasEaten;
+		target.pillWasEaten=pillWasEaten;
+		target.powerPillWasEaten=powerPillWasEaten;
+
+		if(target.pacman==null)
+			target.pacman=pacman.copy();
+		else
+		{
+			target.pacman.currentNodeIndex=pacman.currentNodeIndex;
+			target.pacman.lastMoveMade=pacman.lastMoveMade;
+			target.pacman.numberOfLivesRemaining=pacman.numberOfLivesRemaining;
+			target.pacman.hasReceivedExtraLife=pacman.hasReceivedExtraLife;
+		}
+
+		for(GHOST ghostType : GHOST.values())
+		{
+			Ghost ghost=ghosts.get(ghostType);
+			Ghost targetGhost=target.ghosts.get(ghostType);
+
+			if(targetGhost==null)
+				target.ghosts.put(ghostType,ghost.copy());
+			else
+			{
+				targetGhost.currentNodeIndex=ghost.currentNodeIndex;
+				targetGhost.edibleTime=ghost.edibleTime;
+				targetGhost.lairTime=ghost.lairTime;
+				targetGhost.lastMoveMade=ghost.lastMoveMade;
+			}
+
+			target.ghostsEaten.put(ghostType,ghostsEaten.get(ghostType));
+		}
+	}
+
 	/////////////////////////////////////////////////////////////////////////////
 	///////////////////////////  Game-engine   //////////////////////////////////
 	/////////////////////////////////////////////////////////////////////////////
@@ -388,6 +506,7 @@ public final class Game
 	 */
 	public void updatePacMan(MOVE pacManMove)
 	{
+		validDistances=0;
 		_updatePacMan(pacManMove);					//move pac-man		
 		_eatPill();									//eat a pill
 		_eatPowerPill();							//eat a power pill
@@ -400,6 +519,7 @@ public final class Game
 	 */
 	public void updateGhosts(EnumMap<GHOST,MOVE> ghostMoves)
 	{
+		validDistances=0;
 		ghostMoves=_completeGhostMoves(ghostMoves);
 		
 		if(!_reverseGhosts(ghostMoves,false))
@@ -408,12 +528,14 @@ public final class Game
 	
 	public void updateGhostsWithoutReverse(EnumMap<GHOST,MOVE> ghostMoves)
 	{
+		validDistances=0;
 		ghostMoves=_completeGhostMoves(ghostMoves);
 		_updateGhosts(ghostMoves);
 	}
 	
 	public void updateGhostsWithForcedReverse(EnumMap<GHOST,MOVE> ghostMoves)
 	{
+		validDistances=0;
 		ghostMoves=_completeGhostMoves(ghostMoves);
 		_reverseGhosts(ghostMoves,true);
 	}
@@ -425,6 +547,7 @@ public final class Game
 	 */
 	public void updateGame()
 	{
+		validDistances=0;
 		_feast();									//ghosts eat pac-man or vice versa		
 		_updateLairTimes();
 		_updatePacManExtraLife();
@@ -447,6 +570,7 @@ public final class Game
 	 */
 	public void updateGame(boolean feast,boolean updateLairTimes,boolean updateExtraLife,boolean updateTotalTime,boolean updateLevelTime)
 	{						
+		validDistances=0;
 		if(feast) 			_feast();				//ghosts eat pac-man or vice versa		
 		if(updateLairTimes) _updateLairTimes();
 		if(updateExtraLife) _updatePacManExtraLife();
@@ -803,6 +927,18 @@ public final class Game
 	{
 		return currentMaze;
 	}
+
+	/**
+	 * Returns the junction graph of the current maze: the junctions, the corridors between them
+	 * (with their lengths and pills) and the position of every node on a corridor. Searching over
+	 * this graph instead of the node graph reduces the branching considerably.
+	 *
+	 * @return The junction graph of the current maze.
+	 */
+	public JunctionGraph getJunctionGraph()
+	{
+		return caches[mazeIndex].junctionGraph;
+	}
 	
 	/**
 	 * Returns the x coordinate of the specified node.
@@ -1144,6 +1280,43 @@ public final class Game
 		return indices;
 	}
 
+	/**
+	 * Sets the bits of the node indices of all active pills (other bits are cleared). Unlike
+	 * getActivePillsIndices(), this does not allocate if the bitset is reused, and membership
+	 * can be tested in constant time (e.g., as the targets of getNearestNodeInSet).
+	 *
+	 * @param nodes The bitset to fill, or null to create a new one
+	 * @return the bitset of the nodes with an active pill
+	 */
+	public BitSet getActivePillNodes(BitSet nodes)
+	{
+		return toNodes(pills,currentMaze.pillIndices,nodes);
+	}
+
+	/**
+	 * Sets the bits of the node indices of all active power pills (other bits are cleared).
+	 *
+	 * @param nodes The bitset to fill, or null to create a new one
+	 * @return the bitset of the nodes with an active power pill
+	 */
+	public BitSet getActivePowerPillNodes(BitSet nodes)
+	{
+		return toNodes(powerPills,currentMaze.powerPillIndices,nodes);
+	}
+
+	private static BitSet toNodes(BitSet active,int[] nodeIndices,BitSet nodes)
+	{
+		if(nodes==null)
+			nodes=new BitSet();
+		else
+			nodes.clear();
+
+		for(int i=active.nextSetBit(0);i>=0;i=active.nextSetBit(i+1))
+			nodes.set(nodeIndices[i]);
+
+		return nodes;
+	}
+
 	/**
 	 * If in lair (getLairTime(-)>0) or if not at junction.
 	 *
@@ -1665,4 +1838,471 @@ public final class Game
 
 		return caches[mazeIndex].getPathDistanceFromA2B(fromNodeIndex,toNodeIndex,lastMoveMade);
 	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	//////////////////////////  Graph searches  /////////////////////////////////
+	/////////////////////////////////////////////////////////////////////////////
+
+	/*
+	 * The searches below run over the node graph of the current maze (Ms Pac-Man's view: every move
+	 * is allowed). They use primitive queues and a per-thread scratch space instead of boxed
+	 * collections, so they do not allocate and may be called concurrently from different threads.
+	 */
+
+	private static final ThreadLocal<SearchScratch> scratch=ThreadLocal.withInitial(SearchScratch::new);
+	private static final MOVE[] MOVES=MOVE.values();
+
+	/**
+	 * Returns the shortest path distance from Ms Pac-Man to every node (-1 for unreachable nodes). The array is
+	 * computed on the first call after the game has been updated and then reused, so repeated queries within a
+	 * tick are array reads. It is owned by the game: do not modify it, and do not keep it across updates.
+	 *
+	 * @return the distances from Ms Pac-Man, indexed by node
+	 */
+	public int[] getPacManDistances()
+	{
+		if((validDistances&1)==0)
+		{
+			if(pacmanDistances==null || pacmanDistances.length<currentMaze.graph.length)
+				pacmanDistances=new int[currentMaze.graph.length];
+
+			getDistanceField(pacman.currentNodeIndex,pacmanDistances);
+			validDistances|=1;
+		}
+
+		return pacmanDistances;
+	}
+
+	/**
+	 * Returns the number of moves the ghost needs to reach every node, respecting that ghosts cannot reverse
+	 * (-1 for unreachable nodes). A ghost in the lair is measured from the node where it will appear, plus its
+	 * remaining lair time. Like getPacManDistances(), the array is computed once per tick and owned by the game.
+	 *
+	 * @param ghostType The ghost
+	 * @return the distances from the ghost, indexed by node
+	 */
+	public int[] getGhostDistances(GHOST ghostType)
+	{
+		int bit=2<<ghostType.ordinal();
+
+		if((validDistances&bit)==0)
+		{
+			if(ghostDistances==null)
+				ghostDistances=new int[NUM_GHOSTS][];
+
+			int[] distances=ghostDistances[ghostType.ordinal()];
+
+			if(distances==null || distances.length<currentMaze.graph.length)
+				distances=ghostDistances[ghostType.ordinal()]=new int[currentMaze.graph.length];
+
+			Ghost ghost=ghosts.get(ghostType);
+
+			if(ghost.lairTime>0)
+				getNoReverseDistanceField(currentMaze.initialGhostNodeIndex,MOVE.NEUTRAL,ghost.lairTime,distances);
+			else
+				getNoReverseDistanceField(ghost.currentNodeIndex,ghost.lastMoveMade,0,distances);
+
+			validDistances|=bit;
+		}
+
+		return ghostDistances[ghostType.ordinal()];
+	}
+
+	/**
+	 * Returns the earliest time at which a ghost that is not edible can be at every node (-1 if never), taking
+	 * into account that ghosts cannot reverse, the remaining lair times and that edible ghosts move slower
+	 * (they stand still every GHOST_SPEED_REDUCTION steps until they turn back). The time of an edible ghost is
+	 * slightly underestimated: it is assumed to lose all its slow steps before it starts moving. Computed once
+	 * per tick and owned by the game, like getPacManDistances().
+	 *
+	 * @return the earliest time of a dangerous ghost, indexed by node
+	 */
+	public int[] getGhostThreatTimes()
+	{
+		if((validDistances&THREAT_BIT)==0)
+		{
+			if(threatTimes==null || threatTimes.length<currentMaze.graph.length)
+				threatTimes=new int[currentMaze.graph.length];
+
+			SearchScratch s=scratch.get();
+			int count=0;
+
+			for(Ghost ghost : ghosts.values())
+			{
+				if(ghost.lairTime>0)
+					s.addSource(count++,currentMaze.initialGhostNodeIndex,MOVE.NEUTRAL,ghost.lairTime);
+				else
+					s.addSource(count++,ghost.currentNodeIndex,ghost.lastMoveMade,ghost.edibleTime/GHOST_SPEED_REDUCTION);
+			}
+
+			getNoReverseDistanceField(s,count,threatTimes);
+			validDistances|=THREAT_BIT;
+		}
+
+		return threatTimes;
+	}
+
+	/**
+	 * Returns the safe region: the nodes Ms Pac-Man can reach strictly before any ghost that is not edible
+	 * (see getGhostThreatTimes()). This is a multi-source race between Ms Pac-Man and all ghosts, so a node
+	 * behind a ghost (that cannot turn around) counts as safe. Computed once per tick and owned by the game:
+	 * do not modify it, and do not keep it across updates.
+	 *
+	 * @return the bitset of the safe nodes
+	 */
+	public BitSet getSafeRegion()
+	{
+		if((validDistances&SAFE_BIT)==0)
+		{
+			int[] pacmanTimes=getPacManDistances();
+			int[] ghostTimes=getGhostThreatTimes();
+
+			if(safeRegion==null)
+				safeRegion=new BitSet(currentMaze.graph.length);
+			else
+				safeRegion.clear();
+
+			for(int i=0;i<currentMaze.graph.length;i++)
+				if(pacmanTimes[i]>=0 && (ghostTimes[i]<0 || pacmanTimes[i]<ghostTimes[i]))
+					safeRegion.set(i);
+
+			validDistances|=SAFE_BIT;
+		}
+
+		return safeRegion;
+	}
+
+	/*
+	 * Breadth-first search over (node, last move) pairs, so that the search never reverses. The distance of a node
+	 * is the lowest over the moves with which it can be entered. There may be several sources, each starting at a
+	 * different time: they are added to the queue when the search reaches their start time.
+	 */
+	private void getNoReverseDistanceField(int fromNodeIndex,MOVE lastMoveMade,int offset,int[] distances)
+	{
+		SearchScratch s=scratch.get();
+		s.addSource(0,fromNodeIndex,lastMoveMade,offset);
+		getNoReverseDistanceField(s,1,distances);
+	}
+
+	private void getNoReverseDistanceField(SearchScratch s,int numSources,int[] distances)
+	{
+		Node[] graph=currentMaze.graph;
+		s.sortSources(numSources);
+		int mark=s.begin(graph.length*MOVES.length);
+
+		Arrays.fill(distances,0,graph.length,-1);
+
+		int head=0,tail=0,source=0;
+
+		//layer by layer, so that the sources can join the queue at their start time
+		for(int time=0;head<tail || source<numSources;time++)
+		{
+			if(head==tail)
+				time=s.sourceOffsets[source];
+
+			for(;source<numSources && s.sourceOffsets[source]<=time;source++)
+			{
+				int node=s.sourceNodes[source];
+				MOVE lastMoveMade=s.sourceMoves[source];
+
+				if(!graph[node].allNeighbouringNodes.containsKey(lastMoveMade))
+					lastMoveMade=MOVE.NEUTRAL;
+
+				int start=node*MOVES.length+lastMoveMade.ordinal();
+
+				if(s.visited[start]!=mark)
+				{
+					s.visited[start]=mark;
+					s.cost[start]=time;
+					s.queue[tail++]=start;
+				}
+			}
+
+			for(int layerEnd=tail;head<layerEnd;)
+			{
+				int state=s.queue[head++];
+				int node=state/MOVES.length;
+				int cost=s.cost[state];
+
+				if(distances[node]==-1)
+					distances[node]=cost;
+
+				MOVE move=MOVES[state%MOVES.length];
+				int[] neighbours=graph[node].allNeighbouringNodes.get(move);
+				MOVE[] moves=graph[node].allPossibleMoves.get(move);
+
+				for(int i=0;i<neighbours.length;i++)
+				{
+					int next=neighbours[i]*MOVES.length+moves[i].ordinal();
+
+					if(s.visited[next]!=mark)
+					{
+						s.visited[next]=mark;
+						s.cost[next]=cost+1;
+						s.queue[tail++]=next;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the node in the set that is closest to the start (breadth-first search).
+	 *
+	 * @param fromNodeIndex The node index from where to start
+	 * @param targets The node indices to look for
+	 * @return the closest node index in the set (the start itself if it is in the set), or -1 if none is reachable
+	 */
+	public int getNearestNodeInSet(int fromNodeIndex,BitSet targets)
+	{
+		return getNearestNodeInSet(fromNodeIndex,targets,null,null);
+	}
+
+	/**
+	 * Finds the node in the set that is cheapest to reach from the start (Dijkstra's algorithm). Moving to a node
+	 * costs 1 plus the extra cost of that node, if any. Ties are broken in favour of the lower node index.
+	 *
+	 * @param fromNodeIndex The node index from where to start
+	 * @param targets The node indices to look for
+	 * @param nodeCosts The extra cost (>=0) of entering each node, or null for a breadth-first search
+	 * @param parents If not null, receives the predecessor of every node reached (-1 for the start), so the path to
+	 * the node returned can be followed backwards
+	 * @return the cheapest node index in the set (the start itself if it is in the set), or -1 if none is reachable
+	 */
+	public int getNearestNodeInSet(int fromNodeIndex,BitSet targets,int[] nodeCosts,int[] parents)
+	{
+		if(targets.get(fromNodeIndex))
+		{
+			if(parents!=null)
+				parents[fromNodeIndex]=-1;
+
+			return fromNodeIndex;
+		}
+
+		return search(fromNodeIndex,targets,nodeCosts,parents,null);
+	}
+
+	/**
+	 * Computes the distance from the start to every node (breadth-first search). Unlike the pre-computed
+	 * getShortestPathDistance(), the result covers all nodes at once and can be combined with node costs.
+	 *
+	 * @param fromNodeIndex The node index from where to start
+	 * @param distances Receives the distance of every node, -1 for unreachable nodes (length >= getNumberOfNodes())
+	 * @return the distances
+	 */
+	public int[] getDistanceField(int fromNodeIndex,int[] distances)
+	{
+		return getDistanceField(fromNodeIndex,null,distances);
+	}
+
+	/**
+	 * Computes the cheapest cost from the start to every node (Dijkstra's algorithm). Moving to a node costs 1
+	 * plus the extra cost of that node, if any.
+	 *
+	 * @param fromNodeIndex The node index from where to start
+	 * @param nodeCosts The extra cost (>=0) of entering each node, or null for a breadth-first search
+	 * @param distances Receives the cost of every node, -1 for unreachable nodes (length >= getNumberOfNodes())
+	 * @return the distances
+	 */
+	public int[] getDistanceField(int fromNodeIndex,int[] nodeCosts,int[] distances)
+	{
+		Arrays.fill(distances,0,currentMaze.graph.length,-1);
+		search(fromNodeIndex,null,nodeCosts,null,distances);
+
+		return distances;
+	}
+
+	/*
+	 * Breadth-first search (no costs) or Dijkstra's algorithm with a binary heap of (cost, node) pairs packed in
+	 * longs. Stops at the first target settled, if there are targets; otherwise settles all reachable nodes.
+	 */
+	private int search(int fromNodeIndex,BitSet targets,int[] nodeCosts,int[] parents,int[] distances)
+	{
+		Node[] graph=currentMaze.graph;
+		SearchScratch s=scratch.get();
+		int mark=s.begin(graph.length);
+
+		s.cost[fromNodeIndex]=0;
+		s.visited[fromNodeIndex]=mark;
+
+		if(parents!=null)
+			parents[fromNodeIndex]=-1;
+
+		if(nodeCosts==null)
+		{
+			int head=0,tail=0;
+			s.queue[tail++]=fromNodeIndex;
+
+			while(head<tail)
+			{
+				int node=s.queue[head++];
+
+				if(distances!=null)
+					distances[node]=s.cost[node];
+				else if(targets.get(node))
+					return node;
+
+				for(int neighbour : graph[node].allNeighbouringNodes.get(MOVE.NEUTRAL))
+					if(s.visited[neighbour]!=mark)
+					{
+						s.visited[neighbour]=mark;
+						s.cost[neighbour]=s.cost[node]+1;
+						s.queue[tail++]=neighbour;
+
+						if(parents!=null)
+							parents[neighbour]=node;
+					}
+			}
+
+			return -1;
+		}
+
+		//visited marks the nodes with a tentative cost; settled nodes are marked with -mark
+		int size=0;
+		s.heap[size++]=fromNodeIndex;
+
+		while(size>0)
+		{
+			long top=s.heap[0];
+			s.heap[0]=s.heap[--size];
+			s.siftDown(size);
+
+			int node=(int)top;
+			int cost=(int)(top>>>32);
+
+			if(s.visited[node]==-mark || cost>s.cost[node])
+				continue;
+
+			s.visited[node]=-mark;
+
+			if(distances!=null)
+				distances[node]=cost;
+			else if(targets.get(node))
+				return node;
+
+			for(int neighbour : graph[node].allNeighbouringNodes.get(MOVE.NEUTRAL))
+			{
+				if(s.visited[neighbour]==-mark)
+					continue;
+
+				int newCost=cost+1+nodeCosts[neighbour];
+
+				if(s.visited[neighbour]!=mark || newCost<s.cost[neighbour])
+				{
+					s.visited[neighbour]=mark;
+					s.cost[neighbour]=newCost;
+					s.push(size++,((long)newCost<<32)|neighbour);
+
+					if(parents!=null)
+						parents[neighbour]=node;
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/*
+	 * Per-thread working memory of the searches. Nodes are marked as visited with a number that changes with every
+	 * search, so nothing has to be cleared between searches.
+	 */
+	private static final class SearchScratch
+	{
+		int[] visited=new int[0],cost=new int[0],queue=new int[0];
+		long[] heap=new long[0];
+		int mark;
+
+		//sources of the no-reverse searches
+		final int[] sourceNodes=new int[NUM_GHOSTS],sourceOffsets=new int[NUM_GHOSTS];
+		final MOVE[] sourceMoves=new MOVE[NUM_GHOSTS];
+
+		void addSource(int i,int node,MOVE lastMoveMade,int offset)
+		{
+			sourceNodes[i]=node;
+			sourceMoves[i]=lastMoveMade;
+			sourceOffsets[i]=offset;
+		}
+
+		//insertion sort by start time (there are at most NUM_GHOSTS sources)
+		void sortSources(int count)
+		{
+			for(int i=1;i<count;i++)
+				for(int j=i;j>0 && sourceOffsets[j-1]>sourceOffsets[j];j--)
+				{
+					int node=sourceNodes[j],offset=sourceOffsets[j];
+					MOVE move=sourceMoves[j];
+
+					sourceNodes[j]=sourceNodes[j-1];
+					sourceOffsets[j]=sourceOffsets[j-1];
+					sourceMoves[j]=sourceMoves[j-1];
+					sourceNodes[j-1]=node;
+					sourceOffsets[j-1]=offset;
+					sourceMoves[j-1]=move;
+				}
+		}
+
+		int begin(int numNodes)
+		{
+			if(visited.length<numNodes)
+			{
+				visited=new int[numNodes];
+				cost=new int[numNodes];
+				queue=new int[numNodes];
+				heap=new long[numNodes];
+				mark=0;
+			}
+
+			if(++mark==Integer.MAX_VALUE)
+			{
+				Arrays.fill(visited,0);
+				mark=1;
+			}
+
+			return mark;
+		}
+
+		//adds the entry at index size (growing the heap if a node is pushed more often than expected)
+		void push(int size,long entry)
+		{
+			if(size==heap.length)
+				heap=Arrays.copyOf(heap,size<<1);
+
+			int i=size;
+
+			while(i>0 && heap[(i-1)>>1]>entry)
+			{
+				heap[i]=heap[(i-1)>>1];
+				i=(i-1)>>1;
+			}
+
+			heap[i]=entry;
+		}
+
+		//restores the heap order after the root has been replaced by the last entry
+		void siftDown(int size)
+		{
+			if(size==0)
+				return;
+
+			long entry=heap[0];
+			int i=0;
+
+			while(true)
+			{
+				int child=2*i+1;
+
+				if(child>=size)
+					break;
+				if(child+1<size && heap[child+1]<heap[child])
+					child++;
+				if(heap[child]>=entry)
+					break;
+
+				heap[i]=heap[child];
+				i=child;
+			}
+
+			heap[i]=entry;
+		}
+	}
 }
\ No newline at end of file
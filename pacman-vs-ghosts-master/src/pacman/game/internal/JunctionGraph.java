@@ -0,0 +1,407 @@
+package pacman.game.internal;
+
+import java.util.Arrays;
+
+import pacman.game.Constants.MOVE;
+
+/*
+ * An immutable abstraction of a maze in which the vertices are the junctions and the edges are the
+ * corridors between them. Every corridor is stored twice, once in each direction, so an edge is directed:
+ * it leaves its source junction with firstMove and enters its target junction with lastMove. An edge has
+ * length n if it takes n moves to go from the source to the target; its nodes are numbered by offset, from
+ * 0 (the source junction) to n (the target junction).
+ *
+ * Each node that is not a junction lies on exactly one corridor and is mapped to the edge of that corridor
+ * that leaves the junction with the lower id (ties broken by the lower edge id), together with its offset on
+ * that edge. The pills and power pills on each edge are listed by their pill indices (as used by
+ * Game.isPillStillAvailable); only the inner nodes are considered, a pill on a junction belongs to the junction
+ * (see getJunctionPillIndex).
+ *
+ * Junctions are identified by their position in Maze.junctionIndices, so the ids are the same as the ones used
+ * by PathsCache. The graph is built once per maze; all methods are read-only and may be called from any thread.
+ */
+public final class JunctionGraph
+{
+	private static final MOVE[] MOVES=MOVE.values();
+
+	private final int[] junctionNodes;								//junction id -> node index
+	private final int[] junctionIds;								//node index -> junction id (-1 if not a junction)
+	private final int[] junctionEdgeStart;							//edges leaving junction j: junctionEdgeStart[j]..junctionEdgeStart[j+1]-1
+
+	private final int[] edgeSource,edgeTarget,edgeReverse;
+	private final MOVE[] edgeFirstMove,edgeLastMove;
+	private final int[] edgeNodeStart,edgeNodes;					//nodes of edge e (offsets 0..length): edgeNodes[edgeNodeStart[e]..]
+	private final int[] edgePillStart,edgePills;					//pill indices on the inner nodes of edge e
+	private final int[] edgePowerPillStart,edgePowerPills;			//power pill indices on the inner nodes of edge e
+
+	private final int[] nodeEdge,nodeOffset;						//node index -> (edge, offset), -1 for junctions and unreachable nodes
+	private final int[] junctionPills,junctionPowerPills;			//junction id -> pill index (-1 if none)
+
+	/**
+	 * Builds the junction graph of a maze.
+	 *
+	 * @param maze The maze
+	 */
+	public JunctionGraph(Maze maze)
+	{
+		Node[] graph=maze.graph;
+		junctionNodes=maze.junctionIndices.clone();
+		junctionIds=new int[graph.length];
+		Arrays.fill(junctionIds,-1);
+
+		for(int j=0;j<junctionNodes.length;j++)
+			junctionIds[junctionNodes[j]]=j;
+
+		//count the edges and the nodes on them
+		int numEdges=0;
+		int numEdgeNodes=0;
+
+		for(int j=0;j<junctionNodes.length;j++)
+			for(MOVE move : MOVES)
+			{
+				int length=walk(graph,junctionNodes[j],move,null,null);
+
+				if(length>0)
+				{
+					numEdges++;
+					numEdgeNodes+=length+1;
+				}
+			}
+
+		junctionEdgeStart=new int[junctionNodes.length+1];
+		edgeSource=new int[numEdges];
+		edgeTarget=new int[numEdges];
+		edgeReverse=new int[numEdges];
+		edgeFirstMove=new MOVE[numEdges];
+		edgeLastMove=new MOVE[numEdges];
+		edgeNodeStart=new int[numEdges+1];
+		edgeNodes=new int[numEdgeNodes];
+
+		//walk the corridors again, this time recording them
+		int[] nodes=new int[graph.length+1];
+		MOVE[] lastMove=new MOVE[1];
+		int edge=0;
+
+		for(int j=0;j<junctionNodes.length;j++)
+		{
+			junctionEdgeStart[j]=edge;
+
+			for(MOVE move : MOVES)
+			{
+				int length=walk(graph,junctionNodes[j],move,nodes,lastMove);
+
+				if(length>0)
+				{
+					edgeSource[edge]=j;
+					edgeTarget[edge]=junctionIds[nodes[length]];
+					edgeFirstMove[edge]=move;
+					edgeLastMove[edge]=lastMove[0];
+					edgeNodeStart[edge+1]=edgeNodeStart[edge]+length+1;
+					System.arraycopy(nodes,0,edgeNodes,edgeNodeStart[edge],length+1);
+					edge++;
+				}
+			}
+		}
+
+		junctionEdgeStart[junctionNodes.length]=edge;
+
+		//the reverse of an edge goes between the same junctions through the same first inner node
+		for(int e=0;e<numEdges;e++)
+		{
+			edgeReverse[e]=-1;
+
+			for(int r=junctionEdgeStart[edgeTarget[e]];r<junctionEdgeStart[edgeTarget[e]+1];r++)
+				if(edgeTarget[r]==edgeSource[e] && edgeFirstMove[r]==edgeLastMove[e].opposite() && getEdgeLength(r)==getEdgeLength(e))
+				{
+					edgeReverse[e]=r;
+					break;
+				}
+		}
+
+		//map the inner nodes to the canonical direction of their corridor
+		nodeEdge=new int[graph.length];
+		nodeOffset=new int[graph.length];
+		Arrays.fill(nodeEdge,-1);
+		Arrays.fill(nodeOffset,-1);
+
+		for(int e=0;e<numEdges;e++)
+		{
+			int r=edgeReverse[e];
+
+			if(r!=-1 && (edgeSource[r]<edgeSource[e] || (edgeSource[r]==edgeSource[e] && r<e)))
+				continue;
+
+			for(int offset=1;offset<getEdgeLength(e);offset++)
+			{
+				nodeEdge[getEdgeNode(e,offset)]=e;
+				nodeOffset[getEdgeNode(e,offset)]=offset;
+			}
+		}
+
+		//pills and power pills per edge and per junction
+		edgePillStart=new int[numEdges+1];
+		edgePowerPillStart=new int[numEdges+1];
+
+		for(int e=0;e<numEdges;e++)
+		{
+			int pills=0,powerPills=0;
+
+			for(int offset=1;offset<getEdgeLength(e);offset++)
+			{
+				Node node=graph[getEdgeNode(e,offset)];
+
+				if(node.pillIndex>=0)
+					pills++;
+				if(node.powerPillIndex>=0)
+					powerPills++;
+			}
+
+			edgePillStart[e+1]=edgePillStart[e]+pills;
+			edgePowerPillStart[e+1]=edgePowerPillStart[e]+powerPills;
+		}
+
+		edgePills=new int[edgePillStart[numEdges]];
+		edgePowerPills=new int[edgePowerPillStart[numEdges]];
+
+		for(int e=0;e<numEdges;e++)
+		{
+			int pill=edgePillStart[e],powerPill=edgePowerPillStart[e];
+
+			for(int offset=1;offset<getEdgeLength(e);offset++)
+			{
+				Node node=graph[getEdgeNode(e,offset)];
+
+				if(node.pillIndex>=0)
+					edgePills[pill++]=node.pillIndex;
+				if(node.powerPillIndex>=0)
+					edgePowerPills[powerPill++]=node.powerPillIndex;
+			}
+		}
+
+		junctionPills=new int[junctionNodes.length];
+		junctionPowerPills=new int[junctionNodes.length];
+
+		for(int j=0;j<junctionNodes.length;j++)
+		{
+			junctionPills[j]=graph[junctionNodes[j]].pillIndex;
+			junctionPowerPills[j]=graph[junctionNodes[j]].powerPillIndex;
+		}
+	}
+
+	/*
+	 * Follows the corridor that leaves the junction with the move until the next junction. Stores the nodes
+	 * (starting with the junction itself) and the move entering the next junction if the arrays are not null,
+	 * and returns the length of the corridor, or 0 if the move is not possible or the corridor is a dead end.
+	 */
+	private static int walk(Node[] graph,int junction,MOVE move,int[] nodes,MOVE[] lastMove)
+	{
+		Integer next=graph[junction].neighbourhood.get(move);
+
+		if(next==null)
+			return 0;
+
+		if(nodes!=null)
+			nodes[0]=junction;
+
+		int current=next;
+		int length=1;
+
+		while(graph[current].numNeighbouringNodes<=2)
+		{
+			if(nodes!=null)
+				nodes[length]=current;
+
+			MOVE[] forward=graph[current].allPossibleMoves.get(move);
+
+			if(forward==null || forward.length==0 || length>=graph.length)
+				return 0;
+
+			move=forward[0];
+			current=graph[current].neighbourhood.get(move);
+			length++;
+		}
+
+		if(nodes!=null)
+			nodes[length]=current;
+		if(lastMove!=null)
+			lastMove[0]=move;
+
+		return length;
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	/////////////////////////////  Junctions  ///////////////////////////////////
+	/////////////////////////////////////////////////////////////////////////////
+
+	public int getNumberOfJunctions()
+	{
+		return junctionNodes.length;
+	}
+
+	/**
+	 * Returns the node index of a junction.
+	 */
+	public int getJunctionNodeIndex(int junction)
+	{
+		return junctionNodes[junction];
+	}
+
+	/**
+	 * Returns the junction id of a node, or -1 if the node is not a junction.
+	 */
+	public int getJunctionId(int nodeIndex)
+	{
+		return junctionIds[nodeIndex];
+	}
+
+	/**
+	 * Returns the number of edges leaving a junction (its number of neighbouring nodes, 3 or 4).
+	 */
+	public int getNumberOfOutgoingEdges(int junction)
+	{
+		return junctionEdgeStart[junction+1]-junctionEdgeStart[junction];
+	}
+
+	/**
+	 * Returns the i-th edge leaving a junction (edges are ordered by MOVE).
+	 */
+	public int getOutgoingEdge(int junction,int i)
+	{
+		return junctionEdgeStart[junction]+i;
+	}
+
+	/**
+	 * Returns the edge leaving a junction with the move, or -1 if the move is not possible.
+	 */
+	public int getOutgoingEdge(int junction,MOVE move)
+	{
+		for(int e=junctionEdgeStart[junction];e<junctionEdgeStart[junction+1];e++)
+			if(edgeFirstMove[e]==move)
+				return e;
+
+		return -1;
+	}
+
+	/**
+	 * Returns the pill index of the pill on a junction, or -1 if there is none.
+	 */
+	public int getJunctionPillIndex(int junction)
+	{
+		return junctionPills[junction];
+	}
+
+	/**
+	 * Returns the power pill index of the power pill on a junction, or -1 if there is none.
+	 */
+	public int getJunctionPowerPillIndex(int junction)
+	{
+		return junctionPowerPills[junction];
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////  Edges  ////////////////////////////////////
+	/////////////////////////////////////////////////////////////////////////////
+
+	public int getNumberOfEdges()
+	{
+		return edgeSource.length;
+	}
+
+	public int getEdgeSource(int edge)
+	{
+		return edgeSource[edge];
+	}
+
+	public int getEdgeTarget(int edge)
+	{
+		return edgeTarget[edge];
+	}
+
+	/**
+	 * Returns the move made when leaving the source junction along the edge.
+	 */
+	public MOVE getEdgeFirstMove(int edge)
+	{
+		return edgeFirstMove[edge];
+	}
+
+	/**
+	 * Returns the move made when entering the target junction along the edge.
+	 */
+	public MOVE getEdgeLastMove(int edge)
+	{
+		return edgeLastMove[edge];
+	}
+
+	/**
+	 * Returns the number of moves needed to go from the source to the target of the edge.
+	 */
+	public int getEdgeLength(int edge)
+	{
+		return edgeNodeStart[edge+1]-edgeNodeStart[edge]-1;
+	}
+
+	/**
+	 * Returns the node at an offset along the edge: 0 is the source junction, getEdgeLength(edge) the target junction.
+	 */
+	public int getEdgeNode(int edge,int offset)
+	{
+		return edgeNodes[edgeNodeStart[edge]+offset];
+	}
+
+	/**
+	 * Returns the same corridor in the opposite direction.
+	 */
+	public int getReverseEdge(int edge)
+	{
+		return edgeReverse[edge];
+	}
+
+	public int getNumberOfPills(int edge)
+	{
+		return edgePillStart[edge+1]-edgePillStart[edge];
+	}
+
+	/**
+	 * Returns the pill index of the i-th pill on the inner nodes of the edge.
+	 */
+	public int getPillIndex(int edge,int i)
+	{
+		return edgePills[edgePillStart[edge]+i];
+	}
+
+	public int getNumberOfPowerPills(int edge)
+	{
+		return edgePowerPillStart[edge+1]-edgePowerPillStart[edge];
+	}
+
+	/**
+	 * Returns the power pill index of the i-th power pill on the inner nodes of the edge.
+	 */
+	public int getPowerPillIndex(int edge,int i)
+	{
+		return edgePowerPills[edgePowerPillStart[edge]+i];
+	}
+
+	/////////////////////////////////////////////////////////////////////////////
+	///////////////////////////////  Nodes  ////////////////////////////////////
+	/////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns the edge a node lies on (in the canonical direction of its corridor), or -1 for junctions
+	 * and nodes that are not on a corridor between junctions. The same node lies on getReverseEdge(edge)
+	 * at offset getEdgeLength(edge)-getEdgeOffset(nodeIndex).
+	 */
+	public int getEdge(int nodeIndex)
+	{
+		return nodeEdge[nodeIndex];
+	}
+
+	/**
+	 * Returns the offset of a node along getEdge(nodeIndex), or -1 if it has no edge.
+	 */
+	public int getEdgeOffset(int nodeIndex)
+	{
+		return nodeOffset[nodeIndex];
+	}
+}
@@ -27,6 +27,7 @@ public class PathsCache
 	public HashMap<Integer, Integer> junctionIndexConverter;
 	public DNode[] nodes;
 	public Junction[] junctions;
+	public JunctionGraph junctionGraph;
 	public Game game;
 		
  	public PathsCache(int mazeIndex)
@@ -46,6 +47,8 @@ public class PathsCache
 		
 		for(int i=0;i<junctions.length;i++)
 			junctions[i].computeShortestPaths();
+		
+		junctionGraph=new JunctionGraph(m);
 	}
 
 	//for Ms Pac-Man
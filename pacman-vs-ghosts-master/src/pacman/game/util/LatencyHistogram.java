@@ -0,0 +1,124 @@
+package pacman.game.util;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size latency histogram in the style of HdrHistogram. Values are recorded in microseconds
+ * into log-linear buckets: every power of two is split into SUB_BUCKETS linear sub-buckets, which
+ * bounds the relative error of any reported value to 1/SUB_BUCKETS while covering the range from 1
+ * microsecond up to several days with a few thousand counters. Recording is constant time and does
+ * not allocate, so it can be done for every call of a controller.
+ *
+ * The histogram is meant to be written by a single thread at a time (e.g., the thread computing
+ * the moves of a controller) and read once the game is over.
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BITS=7;							//128 sub-buckets: relative error < 1%
+	private static final int SUB_BUCKETS=1<<SUB_BITS;
+	private static final int HALF=SUB_BUCKETS>>1;
+	private static final long MAX_VALUE=(1L<<40)-1;				//about 12 days in microseconds
+	private static final int NUM_BUCKETS=bucketIndex(MAX_VALUE)+1;
+
+	private final long[] counts=new long[NUM_BUCKETS];
+	private long totalCount,sum,max;
+
+	/**
+	 * Records a latency.
+	 *
+	 * @param nanos The latency in nanoseconds
+	 */
+	public void recordNanos(long nanos)
+	{
+		long value=Math.min(MAX_VALUE,Math.max(0,nanos/1000));
+
+		counts[bucketIndex(value)]++;
+		totalCount++;
+		sum+=value;
+
+		if(value>max)
+			max=value;
+	}
+
+	/**
+	 * Returns the value (in microseconds) below which the given percentage of all recorded values
+	 * fall. The value returned is the highest value equivalent to the bucket found.
+	 *
+	 * @param percentile The percentile, between 0 and 100
+	 * @return the value at the percentile in microseconds (0 if nothing has been recorded)
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		if(totalCount==0)
+			return 0;
+
+		long target=Math.max(1,(long)Math.ceil(percentile/100.0*totalCount));
+		long seen=0;
+
+		for(int i=0;i<counts.length;i++)
+		{
+			seen+=counts[i];
+
+			if(seen>=target)
+				return Math.min(max,highestEquivalentValue(i));
+		}
+
+		return max;
+	}
+
+	public long getTotalCount()
+	{
+		return totalCount;
+	}
+
+	public long getMax()
+	{
+		return max;
+	}
+
+	public double getMean()
+	{
+		return totalCount==0 ? 0 : sum/(double)totalCount;
+	}
+
+	/**
+	 * Clears all recorded values.
+	 */
+	public void reset()
+	{
+		Arrays.fill(counts,0);
+		totalCount=sum=max=0;
+	}
+
+	public String toString()
+	{
+		return "n="+totalCount+" mean="+Math.round(getMean())+"us p50="+getValueAtPercentile(50)+"us p90="+getValueAtPercentile(90)
+				+"us p99="+getValueAtPercentile(99)+"us p99.9="+getValueAtPercentile(99.9)+"us max="+max+"us";
+	}
+
+	/*
+	 * Values below SUB_BUCKETS are stored exactly. Above, a value with magnitude m (the number of bits
+	 * dropped) is stored at m*HALF+(value>>m), where value>>m lies in [HALF,SUB_BUCKETS). This makes the
+	 * bucket indices contiguous across magnitudes.
+	 */
+	private static int bucketIndex(long value)
+	{
+		if(value<SUB_BUCKETS)
+			return (int)value;
+
+		int magnitude=64-Long.numberOfLeadingZeros(value)-SUB_BITS;
+
+		return magnitude*HALF+(int)(value>>>magnitude);
+	}
+
+	private static long highestEquivalentValue(int index)
+	{
+		if(index<SUB_BUCKETS)
+			return index;
+
+		int magnitude=index/HALF-1;
+		long subBucket=index-magnitude*HALF;
+
+		return ((subBucket+1)<<magnitude)-1;
+	}
+}
@@ -0,0 +1,149 @@
+package pacman.game.util;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timer wheel: a single thread that advances a circular array of buckets once every tick
+ * and fires all tasks that fall due in the current bucket. This is used to pace a large number of
+ * concurrent games (each requiring a wake-up every DELAY ms) without dedicating a sleeping thread
+ * to each of them. Scheduling is O(1) and thread-safe; the tasks themselves are executed on the
+ * wheel's thread and must therefore be short (e.g., counting down a latch).
+ */
+public class TimerWheel
+{
+	private final long tickNanos;
+	private final int mask;
+	private final ArrayList<Timeout>[] buckets;
+	private final ConcurrentLinkedQueue<Timeout> pending;
+	private final Thread worker;
+	private final long startTime;
+	private volatile boolean running;
+
+	/**
+	 * Creates and starts a new timer wheel.
+	 *
+	 * @param tickMillis The resolution of the wheel in milliseconds
+	 * @param wheelSize The number of buckets (rounded up to a power of 2)
+	 */
+	@SuppressWarnings({"unchecked","rawtypes"})
+	public TimerWheel(long tickMillis,int wheelSize)
+	{
+		int size=Integer.highestOneBit(Math.max(1,wheelSize-1))<<1;
+
+		this.tickNanos=TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		this.mask=size-1;
+		this.buckets=new ArrayList[size];
+
+		for(int i=0;i<size;i++)
+			buckets[i]=new ArrayList<Timeout>();
+
+		this.pending=new ConcurrentLinkedQueue<Timeout>();
+		this.startTime=System.nanoTime();
+		this.running=true;
+
+		worker=new Thread(new Runnable()
+		{
+			public void run()
+			{
+				loop();
+			}
+		},"timer-wheel");
+
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Schedules a task to be executed once the delay has passed (rounded up to the next tick).
+	 *
+	 * @param task The task to execute
+	 * @param delayMillis The delay in milliseconds
+	 */
+	public void schedule(Runnable task,long delayMillis)
+	{
+		pending.add(new Timeout(task,System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(delayMillis)));
+	}
+
+	/**
+	 * Stops the wheel. Tasks that have not fired yet are discarded.
+	 */
+	public void stop()
+	{
+		running=false;
+		LockSupport.unpark(worker);
+	}
+
+	private void loop()
+	{
+		long tick=0;
+
+		while(running)
+		{
+			long wakeUp=startTime+(tick+1)*tickNanos;
+			long sleep;
+
+			while(running && (sleep=wakeUp-System.nanoTime())>0)
+				LockSupport.parkNanos(sleep);
+
+			transferPending(tick);
+			expire(buckets[(int)(tick & mask)]);
+			tick++;
+		}
+	}
+
+	//move newly scheduled timeouts into the bucket of the tick at which they expire
+	private void transferPending(long currentTick)
+	{
+		Timeout timeout;
+
+		while((timeout=pending.poll())!=null)
+		{
+			long expiryTick=Math.max(currentTick,(timeout.deadline-startTime+tickNanos-1)/tickNanos-1);
+
+			timeout.remainingRounds=(expiryTick-currentTick)/buckets.length;
+			buckets[(int)(expiryTick & mask)].add(timeout);
+		}
+	}
+
+	private void expire(ArrayList<Timeout> bucket)
+	{
+		for(int i=bucket.size()-1;i>=0;i--)
+		{
+			Timeout timeout=bucket.get(i);
+
+			if(timeout.remainingRounds>0)
+				timeout.remainingRounds--;
+			else
+			{
+				//swap-remove: the order within a bucket does not matter
+				bucket.set(i,bucket.get(bucket.size()-1));
+				bucket.remove(bucket.size()-1);
+
+				try
+				{
+					timeout.task.run();
+				}
+				catch(RuntimeException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private static final class Timeout
+	{
+		final Runnable task;
+		final long deadline;
+		long remainingRounds;
+
+		Timeout(Runnable task,long deadline)
+		{
+			this.task=task;
+			this.deadline=deadline;
+		}
+	}
+}